@@ -0,0 +1,88 @@
+package de.tilokowalski.util.benchmarks;
+
+/**
+ * Object with many primitive fields and no nested objects, representing a typical value or event class.
+ */
+public class FlatObject {
+
+    /**
+     * An identifier.
+     */
+    private long id;
+
+    /**
+     * A sequence number.
+     */
+    private int sequence;
+
+    /**
+     * A small counter.
+     */
+    private short retries;
+
+    /**
+     * A flag byte.
+     */
+    private byte flags;
+
+    /**
+     * A measured value.
+     */
+    private double value;
+
+    /**
+     * A tolerance of the measured value.
+     */
+    private float tolerance;
+
+    /**
+     * Whether the object is valid.
+     */
+    private boolean valid;
+
+    /**
+     * A unit symbol.
+     */
+    private char unit;
+
+    /**
+     * A timestamp in milliseconds.
+     */
+    private long timestamp;
+
+    /**
+     * A minimum value.
+     */
+    private int minimum;
+
+    /**
+     * A maximum value.
+     */
+    private int maximum;
+
+    /**
+     * A name.
+     */
+    private String name;
+
+    /**
+     * Creates a flat object with values derived from a seed.
+     *
+     * @param seed The seed of the values.
+     */
+    public FlatObject(int seed) {
+        this.id = 1_000_000_000L + seed;
+        this.sequence = seed;
+        this.retries = (short) (seed % 7);
+        this.flags = (byte) seed;
+        this.value = seed * 0.5;
+        this.tolerance = 0.25f;
+        this.valid = seed % 2 == 0;
+        this.unit = 'C';
+        this.timestamp = 1_700_000_000_000L + seed;
+        this.minimum = -seed;
+        this.maximum = seed * 2;
+        this.name = "flat-" + seed;
+    }
+
+}
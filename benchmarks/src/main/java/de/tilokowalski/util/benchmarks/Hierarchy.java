@@ -0,0 +1,117 @@
+package de.tilokowalski.util.benchmarks;
+
+/**
+ * A deep chain of classes inheriting from each other, each declaring its own fields,
+ * to measure the exploration of different levels of class hierarchy.
+ */
+public final class Hierarchy {
+
+    /**
+     * Not instantiable.
+     */
+    private Hierarchy() {
+    }
+
+    /**
+     * The root of the class hierarchy.
+     */
+    public static class Level0 {
+
+        /**
+         * A field of the root level.
+         */
+        private long id = 42L;
+
+        /**
+         * Another field of the root level.
+         */
+        private String origin = "root";
+
+    }
+
+    /**
+     * The first level of the class hierarchy.
+     */
+    public static class Level1 extends Level0 {
+
+        /**
+         * A field of the first level.
+         */
+        private int first = 1;
+
+        /**
+         * Another field of the first level.
+         */
+        private String label1 = "one";
+
+    }
+
+    /**
+     * The second level of the class hierarchy.
+     */
+    public static class Level2 extends Level1 {
+
+        /**
+         * A field of the second level.
+         */
+        private int second = 2;
+
+        /**
+         * Another field of the second level.
+         */
+        private double ratio2 = 0.2;
+
+    }
+
+    /**
+     * The third level of the class hierarchy.
+     */
+    public static class Level3 extends Level2 {
+
+        /**
+         * A field of the third level.
+         */
+        private int third = 3;
+
+        /**
+         * Another field of the third level.
+         */
+        private boolean flag3 = true;
+
+    }
+
+    /**
+     * The fourth level of the class hierarchy.
+     */
+    public static class Level4 extends Level3 {
+
+        /**
+         * A field of the fourth level.
+         */
+        private int fourth = 4;
+
+        /**
+         * Another field of the fourth level.
+         */
+        private String label4 = "four";
+
+    }
+
+    /**
+     * The fifth and most specific level of the class hierarchy.
+     */
+    public static class Level5 extends Level4 {
+
+        /**
+         * A field of the fifth level.
+         */
+        private int fifth = 5;
+
+        /**
+         * Another field of the fifth level.
+         */
+        private long stamp5 = 1_700_000_000_000L;
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package de.tilokowalski.util.benchmarks;
+
+/**
+ * Object referencing other objects of its kind, used to build deeply nested chains and cyclic graphs.
+ */
+public class Link {
+
+    /**
+     * The next link of the chain.
+     */
+    private Link next;
+
+    /**
+     * A link referenced in addition, pointing back to the start of the chain in cyclic graphs.
+     */
+    private Link back;
+
+    /**
+     * The label of the link.
+     */
+    private String label;
+
+    /**
+     * The position of the link within the chain.
+     */
+    private int position;
+
+    /**
+     * Creates a link.
+     *
+     * @param position The position of the link within the chain.
+     */
+    public Link(int position) {
+        this.position = position;
+        this.label = "link-" + position;
+    }
+
+    /**
+     * Create a chain of links.
+     *
+     * @param length The number of links.
+     * @param cyclic Whether the last link points to the first and every link references the first one, creating cycles.
+     * @return The first link of the chain.
+     */
+    public static Link chain(int length, boolean cyclic) {
+        Link head = new Link(0);
+        Link tail = head;
+
+        for (int i = 1; i < length; i++) {
+            Link link = new Link(i);
+            tail.next = link;
+            tail = link;
+
+            if (cyclic) {
+                link.back = head;
+            }
+        }
+
+        if (cyclic) {
+            tail.next = head;
+        }
+
+        return head;
+    }
+
+}
@@ -0,0 +1,89 @@
+package de.tilokowalski.util.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representative shapes of object graphs to be converted by the benchmarks.
+ */
+public enum Shape {
+
+    /**
+     * A single object with many primitive fields.
+     */
+    FLAT,
+
+    /**
+     * A single object of a class deep within a chain of inheritance.
+     */
+    HIERARCHY,
+
+    /**
+     * A list of many flat objects.
+     */
+    WIDE_LIST,
+
+    /**
+     * A map of many flat objects.
+     */
+    WIDE_MAP,
+
+    /**
+     * A long chain of nested objects.
+     */
+    DEEP_NESTING,
+
+    /**
+     * A chain of nested objects with cycles, which have to be detected.
+     */
+    CYCLIC;
+
+    /**
+     * Number of elements of wide containers.
+     */
+    private static final int WIDTH = 1_000;
+
+    /**
+     * Number of nested objects of chains.
+     */
+    private static final int DEPTH = 100;
+
+    /**
+     * Create an object graph of this shape.
+     *
+     * @return The root of the object graph.
+     */
+    public Object create() {
+        switch (this) {
+            case FLAT:
+                return new FlatObject(1);
+            case HIERARCHY:
+                return new Hierarchy.Level5();
+            case WIDE_LIST:
+                List<FlatObject> list = new ArrayList<>();
+
+                for (int i = 0; i < WIDTH; i++) {
+                    list.add(new FlatObject(i));
+                }
+
+                return list;
+            case WIDE_MAP:
+                Map<String, FlatObject> map = new HashMap<>();
+
+                for (int i = 0; i < WIDTH; i++) {
+                    map.put("key-" + i, new FlatObject(i));
+                }
+
+                return map;
+            case DEEP_NESTING:
+                return Link.chain(DEPTH, false);
+            case CYCLIC:
+                return Link.chain(DEPTH, true);
+            default:
+                throw new IllegalStateException("unknown shape " + this);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package de.tilokowalski.util.benchmarks;
+
+import de.tilokowalski.util.ToString;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the entry points of {@link ToString} for each {@link Shape}, in a single thread.
+ * Run with {@code -prof gc} to report the allocation rate as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ToStringBenchmark {
+
+    /**
+     * The shape of the object graph to convert.
+     */
+    @Param
+    private Shape shape;
+
+    /**
+     * The object graph to convert, shared by all threads.
+     */
+    private Object object;
+
+    /**
+     * Create the object graph of the current shape.
+     */
+    @Setup
+    public void setUp() {
+        object = shape.create();
+    }
+
+    /**
+     * Convert the object using single line delimiter without resolving nested objects.
+     *
+     * @return The string representation.
+     */
+    @Benchmark
+    public String create() {
+        return ToString.create(object);
+    }
+
+    /**
+     * Convert the object and all nested objects using multi-line indentations.
+     *
+     * @return The string representation.
+     */
+    @Benchmark
+    public String createDump() {
+        return ToString.createDump(object);
+    }
+
+    /**
+     * Convert the object and all nested objects in a single line, exploring only the class of the object itself.
+     *
+     * @return The string representation.
+     */
+    @Benchmark
+    public String createCustomOnlyLevel() {
+        return ToString.createCustom(object, ToString.TS_DELIMITER_SL, 0, ToString.TS_LEVEL_ONLY, true);
+    }
+
+    /**
+     * Convert the object and all nested objects in a single line, exploring the entire class hierarchy.
+     *
+     * @return The string representation.
+     */
+    @Benchmark
+    public String createCustomDeepLevel() {
+        return ToString.createCustom(object, ToString.TS_DELIMITER_SL, 0, ToString.TS_LEVEL_DEEP, true);
+    }
+
+}
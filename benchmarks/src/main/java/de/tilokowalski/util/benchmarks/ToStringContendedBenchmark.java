@@ -0,0 +1,12 @@
+package de.tilokowalski.util.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs all benchmarks of {@link ToStringBenchmark} with one thread per available processor converting the same object graph,
+ * to reveal contention on shared state like caches of class metadata.
+ */
+@Threads(Threads.MAX)
+public class ToStringContendedBenchmark extends ToStringBenchmark {
+
+}
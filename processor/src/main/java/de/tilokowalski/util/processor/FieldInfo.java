@@ -0,0 +1,31 @@
+package de.tilokowalski.util.processor;
+
+/**
+ * Information about a field collected while processing a class.
+ *
+ * @param name The name of the field.
+ * @param type The erased declared type of the field, as written in source code.
+ * @param depth Level of class hierarchy the field is declared in, starting with {@code 0} for the class itself.
+ * @param dontResolve Whether the field is annotated with {@link de.tilokowalski.util.ToStringDontResolve}.
+ * @param access Expression reading the value of the field within the generated template.
+ */
+record FieldInfo(String name, String type, int depth, boolean dontResolve, String access) {
+
+    /**
+     * Get the name of the primitive getter of the template used for this field.
+     *
+     * @return The name of the getter, or {@code null} if the field is not primitive.
+     */
+    String getPrimitiveGetter() {
+        return switch (type) {
+            case "int", "short", "byte" -> "getInt";
+            case "long" -> "getLong";
+            case "double" -> "getDouble";
+            case "float" -> "getFloat";
+            case "boolean" -> "getBoolean";
+            case "char" -> "getChar";
+            default -> null;
+        };
+    }
+
+}
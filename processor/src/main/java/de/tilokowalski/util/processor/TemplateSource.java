@@ -0,0 +1,140 @@
+package de.tilokowalski.util.processor;
+
+import de.tilokowalski.util.ToStringTemplate;
+import java.util.List;
+
+/**
+ * Source code of a generated {@link ToStringTemplate}.
+ */
+final class TemplateSource {
+
+    /**
+     * Primitive getters of {@link ToStringTemplate}, each with its return type.
+     */
+    private static final String[][] PRIMITIVE_GETTERS = {
+        {"getInt", "int"},
+        {"getLong", "long"},
+        {"getDouble", "double"},
+        {"getFloat", "float"},
+        {"getBoolean", "boolean"},
+        {"getChar", "char"},
+    };
+
+    /**
+     * The package of the template.
+     */
+    private final String packageName;
+
+    /**
+     * The simple name of the template.
+     */
+    private final String templateName;
+
+    /**
+     * The qualified name of the class described by the template.
+     */
+    private final String typeName;
+
+    /**
+     * The included fields of the class in hierarchy order.
+     */
+    private final List<FieldInfo> fields;
+
+    /**
+     * Creates the source code of a template.
+     *
+     * @param packageName The package of the template.
+     * @param templateName The simple name of the template.
+     * @param typeName The qualified name of the class described by the template.
+     * @param fields The included fields of the class in hierarchy order.
+     */
+    TemplateSource(String packageName, String templateName, String typeName, List<FieldInfo> fields) {
+        this.packageName = packageName;
+        this.templateName = templateName;
+        this.typeName = typeName;
+        this.fields = fields;
+    }
+
+    /**
+     * Render the source code of the template.
+     *
+     * @return The source code.
+     */
+    @Override
+    public String toString() {
+        StringBuilder source = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        String templateType = ToStringTemplate.class.getCanonicalName();
+
+        source.append("@javax.annotation.processing.Generated(\"").append(ToStringProcessor.class.getName()).append("\")\n");
+        source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        source.append("public final class ").append(templateName).append(" implements ").append(templateType).append('<').append(typeName).append("> {\n\n");
+
+        source.append("    private static final java.util.List<").append(templateType).append(".Field> FIELDS = java.util.List.of(");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            source.append(i == 0 ? "\n" : ",\n");
+            source.append("        new ").append(templateType).append(".Field(\"").append(field.name()).append("\", ")
+                .append(field.type()).append(".class, ").append(field.depth()).append(", ").append(field.dontResolve()).append(')');
+        }
+        source.append(");\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Class<").append(typeName).append("> getType() {\n");
+        source.append("        return ").append(typeName).append(".class;\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public java.util.List<").append(templateType).append(".Field> getFields() {\n");
+        source.append("        return FIELDS;\n");
+        source.append("    }\n\n");
+
+        appendGetter(source, "get", "Object", null);
+
+        for (String[] getter : PRIMITIVE_GETTERS) {
+            appendGetter(source, getter[0], getter[1], getter[0]);
+        }
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Append a getter switching over the field positions, if any field is read by it.
+     *
+     * @param source The source code to append to.
+     * @param methodName The name of the getter.
+     * @param returnType The return type of the getter.
+     * @param primitiveGetter The primitive getter the fields must be read by, or {@code null} for all fields.
+     */
+    private void appendGetter(StringBuilder source, String methodName, String returnType, String primitiveGetter) {
+        StringBuilder cases = new StringBuilder();
+
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+
+            if (primitiveGetter == null || primitiveGetter.equals(field.getPrimitiveGetter())) {
+                cases.append("            case ").append(i).append(":\n");
+                cases.append("                return ").append(field.access()).append(";\n");
+            }
+        }
+
+        if (primitiveGetter != null && cases.length() == 0) {
+            return;
+        }
+
+        source.append("    @Override\n");
+        source.append("    public ").append(returnType).append(' ').append(methodName).append('(').append(typeName).append(" object, int index) {\n");
+        source.append("        switch (index) {\n");
+        source.append(cases);
+        source.append("            default:\n");
+        source.append("                throw new IndexOutOfBoundsException(index);\n");
+        source.append("        }\n");
+        source.append("    }\n\n");
+    }
+
+}
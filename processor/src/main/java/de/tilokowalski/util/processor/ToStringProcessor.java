@@ -0,0 +1,314 @@
+package de.tilokowalski.util.processor;
+
+import de.tilokowalski.util.ToStringDontResolve;
+import de.tilokowalski.util.ToStringGenerate;
+import de.tilokowalski.util.ToStringIgnore;
+import de.tilokowalski.util.ToStringTemplate;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating a {@link ToStringTemplate} named {@code <Class>ToStringTemplate} for every class
+ * annotated with {@link ToStringGenerate}. The generated template reads the fields directly or through their getters,
+ * honours {@link ToStringIgnore} and {@link ToStringDontResolve} and records the level of class hierarchy of each field.
+ * All templates are registered as service, so the ToString utility picks them up instead of using reflection.
+ */
+@SupportedAnnotationTypes("de.tilokowalski.util.ToStringGenerate")
+public class ToStringProcessor extends AbstractProcessor {
+
+    /**
+     * Suffix appended to the name of a class to name its template.
+     */
+    static final String TEMPLATE_SUFFIX = "ToStringTemplate";
+
+    /**
+     * Name of the variable holding the object within the generated methods.
+     */
+    private static final String OBJECT = "object";
+
+    /**
+     * Qualified names of all templates generated so far, to be registered as service.
+     */
+    private final Set<String> templates = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(ToStringGenerate.class)) {
+            if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.RECORD) {
+                error("annotation " + ToStringGenerate.class.getSimpleName() + " is only supported for classes", element);
+                continue;
+            }
+
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                error("template could not be written: " + e.getMessage(), element);
+            }
+        }
+
+        if (roundEnvironment.processingOver() && !templates.isEmpty()) {
+            try {
+                writeServiceFile();
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "service file could not be written: " + e.getMessage());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Generate the template of a given class.
+     *
+     * @param type The class to generate the template for.
+     * @throws IOException When the source file can not be written.
+     */
+    private void generate(TypeElement type) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String templateName = getTemplateName(type);
+        String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+
+        List<FieldInfo> fields = collectFields(type, packageName);
+
+        if (fields == null) {
+            return;
+        }
+
+        String qualifiedName = packageName.isEmpty() ? templateName : packageName + "." + templateName;
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(new TemplateSource(packageName, templateName, typeName, fields).toString());
+        }
+
+        templates.add(qualifiedName);
+    }
+
+    /**
+     * Collect the included fields of a class and its superclasses, validating their annotations.
+     * The components of a record are included although their fields are final, like at runtime.
+     *
+     * @param type The class to collect the fields of.
+     * @param packageName The package the template is generated in.
+     * @return The included fields in hierarchy order, or {@code null} if any error has been reported.
+     */
+    private List<FieldInfo> collectFields(TypeElement type, String packageName) {
+        List<FieldInfo> fields = new ArrayList<>();
+        boolean valid = true;
+        int depth = 0;
+
+        for (TypeElement current = type; current != null; current = getSuperclass(current), depth++) {
+            String currentPackage = processingEnv.getElementUtils().getPackageOf(current).getQualifiedName().toString();
+
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                boolean ignore = field.getAnnotation(ToStringIgnore.class) != null;
+                boolean dontResolve = field.getAnnotation(ToStringDontResolve.class) != null;
+
+                if (dontResolve && ignore) {
+                    error("annotations " + ToStringIgnore.class.getSimpleName() + " and " + ToStringDontResolve.class.getSimpleName() + " are not compatible", field);
+                    valid = false;
+                    continue;
+                }
+
+                if (dontResolve && !isContainer(field.asType())) {
+                    error("annotation " + ToStringDontResolve.class.getSimpleName() + " is not supported for field " + field.getSimpleName() + " of type " + field.asType(), field);
+                    valid = false;
+                    continue;
+                }
+
+                boolean component = current.getKind() == ElementKind.RECORD;
+
+                if (ignore || field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.FINAL) && !component) {
+                    continue;
+                }
+
+                String access = getAccessExpression(current, currentPackage, packageName, field, depth);
+
+                if (access == null) {
+                    if (currentPackage.startsWith("java.")) {
+                        continue; /* not accessible by reflection either */
+                    }
+
+                    error("field " + field.getSimpleName() + " is private and has no accessible getter, make it package-private or add a getter", field);
+                    valid = false;
+                    continue;
+                }
+
+                String fieldType = processingEnv.getTypeUtils().erasure(field.asType()).toString();
+                fields.add(new FieldInfo(field.getSimpleName().toString(), fieldType, depth, dontResolve, access));
+            }
+        }
+
+        return valid ? fields : null;
+    }
+
+    /**
+     * Get the expression reading the value of a field from the object within the generated template.
+     * Fields that are not accessible are read through their getter, or through the accessor method of a record component.
+     *
+     * @param declaringType The class declaring the field.
+     * @param declaringPackage The package of the class declaring the field.
+     * @param packageName The package the template is generated in.
+     * @param field The field to read.
+     * @param depth The level of class hierarchy the field is declared in.
+     * @return The expression, or {@code null} if the field can not be read from the template.
+     */
+    private String getAccessExpression(TypeElement declaringType, String declaringPackage, String packageName, VariableElement field, int depth) {
+        String receiver = depth == 0 ? OBJECT : "((" + processingEnv.getTypeUtils().erasure(declaringType.asType()) + ") " + OBJECT + ")";
+
+        if (isAccessible(field, declaringPackage, packageName)) {
+            return receiver + "." + field.getSimpleName();
+        }
+
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(declaringType.getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+
+            boolean getter = methodName.equals("get" + capitalized)
+                || (methodName.equals("is" + capitalized) && field.asType().getKind() == TypeKind.BOOLEAN)
+                || (methodName.equals(name) && declaringType.getKind() == ElementKind.RECORD);
+
+            if (getter && method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.STATIC)
+                && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())
+                && isAccessible(method, declaringPackage, packageName)) {
+                return receiver + "." + methodName + "()";
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check whether a member can be accessed from the generated template.
+     *
+     * @param member The field or method to check.
+     * @param declaringPackage The package of the class declaring the member.
+     * @param packageName The package the template is generated in.
+     * @return Whether the member is accessible.
+     */
+    private static boolean isAccessible(Element member, String declaringPackage, String packageName) {
+        if (member.getModifiers().contains(Modifier.PRIVATE)) {
+            return false;
+        }
+
+        return member.getModifiers().contains(Modifier.PUBLIC) || declaringPackage.equals(packageName);
+    }
+
+    /**
+     * Check whether a type is a collection, map or array, the only types supported by {@link ToStringDontResolve}.
+     *
+     * @param type The type to check.
+     * @return Whether the type is a container.
+     */
+    private boolean isContainer(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return true;
+        }
+
+        return isSubtype(type, "java.util.Collection") || isSubtype(type, "java.util.Map");
+    }
+
+    /**
+     * Check whether a type is a subtype of the erasure of another type.
+     *
+     * @param type The type to check.
+     * @param qualifiedName The qualified name of the supertype.
+     * @return Whether the type is a subtype.
+     */
+    private boolean isSubtype(TypeMirror type, String qualifiedName) {
+        TypeElement supertype = processingEnv.getElementUtils().getTypeElement(qualifiedName);
+
+        if (supertype == null) {
+            return false;
+        }
+
+        return processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type), processingEnv.getTypeUtils().erasure(supertype.asType()));
+    }
+
+    /**
+     * Get the superclass of a class.
+     *
+     * @param type The class to get the superclass of.
+     * @return The superclass, or {@code null} for {@link Object}.
+     */
+    private static TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * Get the simple name of the template of a class, joining the names of enclosing classes by underscores.
+     *
+     * @param type The class to name the template for.
+     * @return The simple name of the template.
+     */
+    private static String getTemplateName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+
+        for (Element enclosing = type.getEnclosingElement(); enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+
+        return name.append(TEMPLATE_SUFFIX).toString();
+    }
+
+    /**
+     * Write the service file registering all generated templates.
+     *
+     * @throws IOException When the service file can not be written.
+     */
+    private void writeServiceFile() throws IOException {
+        String name = "META-INF/services/" + ToStringTemplate.class.getName();
+        FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", name);
+
+        try (Writer writer = file.openWriter()) {
+            for (String template : templates) {
+                writer.write(template);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Report an error at a given element.
+     *
+     * @param message The error message.
+     * @param element The element causing the error.
+     */
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
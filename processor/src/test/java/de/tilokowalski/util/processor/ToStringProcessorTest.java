@@ -0,0 +1,140 @@
+package de.tilokowalski.util.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.tilokowalski.util.ToString;
+import de.tilokowalski.util.ToStringTemplate;
+import de.tilokowalski.util.processor.objects.Book;
+import de.tilokowalski.util.processor.objects.Edition;
+import de.tilokowalski.util.processor.objects.Novel;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the {@link ToStringProcessor} class by utilizing the {@link Book} and {@link Novel} classes,
+ * whose templates are generated when compiling the tests.
+ */
+public class ToStringProcessorTest {
+
+    /**
+     * A directory for compiling sources with errors.
+     */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that the generated templates are registered as service.
+     */
+    @Test
+    void testTemplatesAreRegistered() {
+        boolean bookFound = false;
+        boolean novelFound = false;
+
+        for (ToStringTemplate<?> template : ServiceLoader.load(ToStringTemplate.class)) {
+            bookFound |= template.getType() == Book.class;
+            novelFound |= template.getType() == Novel.class;
+        }
+
+        assertTrue(bookFound);
+        assertTrue(novelFound);
+    }
+
+    /**
+     * Tests the {@link ToString#create(Object)} method with a book object, whose fields are read by the generated template.
+     * The ignored field must be left out and the private field must be read through its getter.
+     */
+    @Test
+    void testCreateWithGeneratedTemplate() {
+        Book book = new Book("Dune", 412, new ArrayList<>(List.of("Book I", "Book II")));
+
+        String expected = "Book[title=\"Dune\",pages=412,available=true,chapters=ArrayList[2]]";
+        String result = ToString.create(book);
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests the {@link ToString#createCustom(Object, char, int, int, boolean)} method with a novel object and different levels.
+     * The generated template must honour the level of class hierarchy of the inherited fields.
+     */
+    @Test
+    void testCreateCustomWithGeneratedTemplateAndLevels() {
+        Novel novel = new Novel("Dune", 412, new ArrayList<>(List.of("Book I")), "Science Fiction");
+
+        String expectedOnly = "Novel[genre=\"Science Fiction\"]";
+        String expectedDeep = "Novel[genre=\"Science Fiction\",title=\"Dune\",pages=412,available=true,chapters=ArrayList[1]]";
+
+        assertEquals(expectedOnly, ToString.createCustom(novel, ',', 0, ToString.TS_LEVEL_ONLY, false));
+        assertEquals(expectedDeep, ToString.createCustom(novel, ',', 0, ToString.TS_LEVEL_DEEP, false));
+    }
+
+    /**
+     * Tests a record with a generated template.
+     * The components must be read through their accessor methods, without the ignored one, like without a template.
+     */
+    @Test
+    void testCreateWithGeneratedRecordTemplate() {
+        Edition edition = new Edition("Chilton", 1965, "X-1");
+
+        boolean editionFound = false;
+
+        for (ToStringTemplate<?> template : ServiceLoader.load(ToStringTemplate.class)) {
+            editionFound |= template.getType() == Edition.class;
+        }
+
+        assertTrue(editionFound);
+        assertEquals("Edition[publisher=\"Chilton\",year=1965]", ToString.create(edition));
+    }
+
+    /**
+     * Tests that a private field without getter and incompatible annotations are reported as compile errors.
+     *
+     * @throws IOException When the source can not be written.
+     * @throws URISyntaxException When the class path can not be determined.
+     */
+    @Test
+    void testInvalidClassIsRejected() throws IOException, URISyntaxException {
+        Path source = tempDir.resolve("Invalid.java");
+        Files.writeString(source, String.join("\n",
+            "@de.tilokowalski.util.ToStringGenerate",
+            "public class Invalid {",
+            "    private String hidden;",
+            "    @de.tilokowalski.util.ToStringDontResolve",
+            "    String notAContainer;",
+            "}"));
+
+        String classPath = new File(ToStringTemplate.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                List.of("-classpath", classPath, "-d", tempDir.toString(), "-proc:only"), null, fileManager.getJavaFileObjects(source.toFile()));
+            task.setProcessors(List.of(new ToStringProcessor()));
+
+            assertFalse(task.call());
+        }
+
+        String messages = diagnostics.getDiagnostics().toString();
+
+        assertTrue(messages.contains("field hidden is private and has no accessible getter"));
+        assertTrue(messages.contains("is not supported for field notAContainer"));
+    }
+
+}
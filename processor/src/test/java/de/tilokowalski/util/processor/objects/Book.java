@@ -0,0 +1,65 @@
+package de.tilokowalski.util.processor.objects;
+
+import de.tilokowalski.util.ToStringDontResolve;
+import de.tilokowalski.util.ToStringGenerate;
+import de.tilokowalski.util.ToStringIgnore;
+import java.util.List;
+
+/**
+ * A simple book class for testing. A template is generated for it at build time.
+ */
+@ToStringGenerate
+public class Book {
+
+    /**
+     * The title of the book, only accessible through its getter.
+     */
+    private String title;
+
+    /**
+     * The number of pages.
+     */
+    int pages;
+
+    /**
+     * Whether the book is available.
+     */
+    boolean available;
+
+    /**
+     * The internal inventory number. This field is ignored.
+     */
+    @ToStringIgnore
+    private long inventoryNumber;
+
+    /**
+     * The chapter titles. This field is not resolved.
+     */
+    @ToStringDontResolve
+    List<String> chapters;
+
+    /**
+     * Creates a new book object.
+     *
+     * @param title The title of the book.
+     * @param pages The number of pages.
+     * @param chapters The chapter titles.
+     */
+    public Book(String title, int pages, List<String> chapters) {
+        this.title = title;
+        this.pages = pages;
+        this.available = true;
+        this.inventoryNumber = 4711;
+        this.chapters = chapters;
+    }
+
+    /**
+     * Get the title of the book.
+     *
+     * @return The title of the book.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+}
@@ -0,0 +1,12 @@
+package de.tilokowalski.util.processor.objects;
+
+import de.tilokowalski.util.ToStringGenerate;
+import de.tilokowalski.util.ToStringIgnore;
+
+/**
+ * A simple record for testing. A template reading its components is generated for it at build time.
+ */
+@ToStringGenerate
+public record Edition(String publisher, int year, @ToStringIgnore String internalCode) {
+
+}
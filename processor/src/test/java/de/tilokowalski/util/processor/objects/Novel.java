@@ -0,0 +1,30 @@
+package de.tilokowalski.util.processor.objects;
+
+import de.tilokowalski.util.ToStringGenerate;
+import java.util.List;
+
+/**
+ * A simple novel class for testing. Extends the {@link Book} class to test the levels of class hierarchy.
+ */
+@ToStringGenerate
+public class Novel extends Book {
+
+    /**
+     * The genre of the novel.
+     */
+    String genre;
+
+    /**
+     * Creates a new novel object.
+     *
+     * @param title The title of the novel.
+     * @param pages The number of pages.
+     * @param chapters The chapter titles.
+     * @param genre The genre of the novel.
+     */
+    public Novel(String title, int pages, List<String> chapters, String genre) {
+        super(title, pages, chapters);
+        this.genre = genre;
+    }
+
+}
@@ -0,0 +1,26 @@
+package de.tilokowalski.util;
+
+/**
+ * Thrown within a conversion to stop the traversal right away when its {@link ToStringBudget} is exhausted.
+ * Never passed on to callers of {@link ToString}. A single instance without stack trace is reused.
+ */
+final class BudgetExhaustedException extends RuntimeException {
+
+    /**
+     * The reused instance.
+     */
+    static final BudgetExhaustedException INSTANCE = new BudgetExhaustedException();
+
+    /**
+     * Serial version of this exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception without stack trace.
+     */
+    private BudgetExhaustedException() {
+        super("budget exhausted", null, false, false);
+    }
+
+}
@@ -0,0 +1,392 @@
+package de.tilokowalski.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Reflective information about a class that is required to create its string representation.
+ * The class hierarchy is walked only once per class, the result is cached in a {@link ClassValue}
+ * so that unloading the class (or its class loader) is not prevented by the cache.
+ * If a {@link ToStringTemplate} is registered for the class, the fields are taken from it instead of reflection.
+ */
+final class ClassMetadata {
+
+    /**
+     * Names of all classes whose metadata has been resolved, written to the class index by {@link ToStringWarmup#writeIndex}.
+     * Only names are kept, so classes can still be unloaded.
+     */
+    private static final Set<String> RESOLVED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Cache of the metadata per class.
+     */
+    private static final ClassValue<ClassMetadata> CACHE = new ClassValue<>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            ToStringTemplate<?> template = TemplateRegistry.find(type);
+
+            if (!type.isHidden()) {
+                RESOLVED.add(type.getName());
+            }
+
+            return template != null ? new ClassMetadata(template) : new ClassMetadata(type);
+        }
+    };
+
+    /**
+     * The class described by this metadata.
+     */
+    @Getter
+    private final Class<?> type;
+
+    /**
+     * The simple name of the class, as written in front of the objects content.
+     */
+    @Getter
+    private final String simpleName;
+
+    /**
+     * Category of the class.
+     */
+    @Getter
+    private final TypeCategory category;
+
+    /**
+     * Whether string representations of objects of the class may be cached, i.e. the class is a record or annotated with {@link ToStringCache}.
+     */
+    @Getter
+    private final boolean cacheable;
+
+    /**
+     * All included fields of the entire class hierarchy, ordered from the class itself to its topmost superclass.
+     */
+    @Getter(AccessLevel.NONE)
+    private final FieldMetadata[] fields;
+
+    /**
+     * Number of included fields up to a certain level of class hierarchy, indexed by level.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int[] fieldCounts;
+
+    /**
+     * First annotation incompatibility found up to a certain level of class hierarchy, indexed by level.
+     */
+    @Getter(AccessLevel.NONE)
+    private final String[] validationErrors;
+
+    /**
+     * Layouts compiled so far, replaced as a whole when a new layout is added.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile CompiledLayout[] layouts = new CompiledLayout[0];
+
+    /**
+     * Creates the metadata by walking the class hierarchy of the given class.
+     *
+     * @param type The class to describe.
+     */
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+        this.simpleName = type.getSimpleName();
+        this.category = TypeCategory.of(type);
+        this.cacheable = type.isRecord() || type.isAnnotationPresent(ToStringCache.class);
+
+        List<FieldMetadata> included = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+
+        String firstError = null;
+        int depth = 0;
+
+        for (Class<?> currentClass = type; currentClass != null; currentClass = currentClass.getSuperclass()) {
+            if (category.isContainer()) {
+                /* CONTAINERS ARE WRITTEN BY THEIR ELEMENTS, NOT BY THEIR FIELDS */
+            } else if (currentClass.isRecord()) {
+                firstError = includeRecordComponents(currentClass, depth, included, firstError);
+            } else {
+                firstError = includeFields(currentClass, depth, included, firstError);
+            }
+
+            counts.add(included.size());
+            errors.add(firstError);
+            depth++;
+        }
+
+        this.fields = included.toArray(new FieldMetadata[0]);
+        this.fieldCounts = counts.stream().mapToInt(Integer::intValue).toArray();
+        this.validationErrors = errors.toArray(new String[0]);
+    }
+
+    /**
+     * Creates the metadata from a template generated at build time, without any reflective access to the fields.
+     * The annotations have already been validated when generating the template.
+     *
+     * @param template The template of the class.
+     */
+    private ClassMetadata(ToStringTemplate<?> template) {
+        Class<?> type = template.getType();
+
+        this.type = type;
+        this.simpleName = type.getSimpleName();
+        this.category = TypeCategory.of(type);
+        this.cacheable = type.isRecord() || type.isAnnotationPresent(ToStringCache.class);
+
+        List<ToStringTemplate.Field> templateFields = template.getFields();
+
+        int depthCount = 0;
+        for (Class<?> currentClass = type; currentClass != null; currentClass = currentClass.getSuperclass()) {
+            depthCount++;
+        }
+
+        this.fields = new FieldMetadata[templateFields.size()];
+        this.fieldCounts = new int[depthCount];
+        this.validationErrors = new String[depthCount];
+
+        for (int i = 0; i < fields.length; i++) {
+            ToStringTemplate.Field field = templateFields.get(i);
+
+            fields[i] = new FieldMetadata(field.type(), FieldAccessor.of(template, i), field.name(), TypeCategory.of(field.type()),
+                field.dontResolve(), field.depth());
+
+            for (int depth = Math.max(field.depth(), 0); depth < depthCount; depth++) {
+                fieldCounts[depth]++;
+            }
+        }
+    }
+
+    /**
+     * Get the metadata of a given class, resolving it on first access.
+     *
+     * @param type The class to get the metadata for.
+     * @return The cached metadata of the class.
+     */
+    static ClassMetadata of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /**
+     * Get the names of all classes whose metadata has been resolved so far.
+     *
+     * @return The names of the classes, a live view of the set.
+     */
+    static Set<String> getResolvedNames() {
+        return RESOLVED;
+    }
+
+    /**
+     * Discard the cached metadata of a given class, so it is resolved again on next access.
+     *
+     * @param type The class whose metadata to discard.
+     */
+    static void invalidate(Class<?> type) {
+        CACHE.remove(type);
+    }
+
+    /**
+     * Get the number of included fields up to a certain level of class hierarchy.
+     *
+     * @param level The level of class hierarchy to be explored.
+     * @return The number of fields, which are the first ones returned by {@link #getField(int)}.
+     */
+    int getFieldCount(int level) {
+        return fieldCounts[toIndex(level)];
+    }
+
+    /**
+     * Get an included field by its position in the hierarchy order.
+     *
+     * @param index The position of the field.
+     * @return The metadata of the field.
+     */
+    FieldMetadata getField(int index) {
+        return fields[index];
+    }
+
+    /**
+     * Validate the annotations of all fields up to a certain level of class hierarchy.
+     *
+     * @param level The level of class hierarchy to be explored.
+     * @throws Exception When any field has incompatible annotations.
+     */
+    void validate(int level) throws Exception {
+        String error = validationErrors[toIndex(level)];
+
+        if (error != null) {
+            throw new Exception(error);
+        }
+    }
+
+    /**
+     * Get the layout of this class compiled for a certain delimiter and level of class hierarchy, compiling it on first access.
+     *
+     * @param delimiter The character to be used as delimiter.
+     * @param level The level of class hierarchy to be explored.
+     * @return The compiled layout.
+     */
+    CompiledLayout getLayout(char delimiter, int level) {
+        int levelIndex = toIndex(level);
+
+        for (CompiledLayout layout : layouts) {
+            if (layout.getDelimiter() == delimiter && layout.getLevelIndex() == levelIndex) {
+                return layout;
+            }
+        }
+
+        synchronized (this) {
+            CompiledLayout[] current = layouts;
+
+            for (CompiledLayout layout : current) {
+                if (layout.getDelimiter() == delimiter && layout.getLevelIndex() == levelIndex) {
+                    return layout;
+                }
+            }
+
+            CompiledLayout layout = new CompiledLayout(this, delimiter, levelIndex, fieldCounts[levelIndex]);
+
+            CompiledLayout[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = layout;
+            layouts = extended;
+
+            return layout;
+        }
+    }
+
+    /**
+     * Convert a level of class hierarchy to an index of the per level arrays.
+     *
+     * @param level The level of class hierarchy to be explored.
+     * @return The index within the per level arrays.
+     */
+    private int toIndex(int level) {
+        int deepest = fieldCounts.length - 1;
+
+        if (level == ToString.TS_LEVEL_DEEP || level < 0 || level > deepest) {
+            return deepest;
+        }
+
+        return level;
+    }
+
+    /**
+     * Add the included fields declared by a single class of the hierarchy.
+     *
+     * @param currentClass The class declaring the fields.
+     * @param depth The level of class hierarchy of the class.
+     * @param included The included fields, to which the fields of the class are added.
+     * @param firstError The first annotation incompatibility found so far, {@code null} if none.
+     * @return The first annotation incompatibility found including the fields of the class, {@code null} if none.
+     */
+    private static String includeFields(Class<?> currentClass, int depth, List<FieldMetadata> included, String firstError) {
+        for (Field field : currentClass.getDeclaredFields()) {
+            try {
+                field.setAccessible(true);
+            } catch (InaccessibleObjectException e) {
+                continue;
+            }
+
+            if (firstError == null) {
+                firstError = validateFieldAnnotations(field);
+            }
+
+            if (isFieldIncluded(field)) {
+                try {
+                    included.add(new FieldMetadata(field.getType(), FieldAccessor.of(field), field.getName(), TypeCategory.of(field.getType()),
+                        field.isAnnotationPresent(ToStringDontResolve.class), depth));
+                } catch (IllegalAccessException e) {
+                    /* IGNORE */
+                }
+            }
+        }
+
+        return firstError;
+    }
+
+    /**
+     * Add the components of a record in their declaration order, read through their accessor methods.
+     * Unlike fields of other classes, the components are included although their fields are final,
+     * since they are the state of the record. The annotations are taken from the fields backing the components.
+     *
+     * @param record The record class.
+     * @param depth The level of class hierarchy of the record class.
+     * @param included The included fields, to which the components are added.
+     * @param firstError The first annotation incompatibility found so far, {@code null} if none.
+     * @return The first annotation incompatibility found including the components, {@code null} if none.
+     */
+    private static String includeRecordComponents(Class<?> record, int depth, List<FieldMetadata> included, String firstError) {
+        for (RecordComponent component : record.getRecordComponents()) {
+            Field field;
+
+            try {
+                field = record.getDeclaredField(component.getName());
+                component.getAccessor().setAccessible(true);
+            } catch (NoSuchFieldException | InaccessibleObjectException e) {
+                continue;
+            }
+
+            if (firstError == null) {
+                firstError = validateFieldAnnotations(field);
+            }
+
+            if (field.getAnnotation(ToStringIgnore.class) == null) {
+                try {
+                    included.add(new FieldMetadata(component.getType(), FieldAccessor.of(component), component.getName(), TypeCategory.of(component.getType()),
+                        field.isAnnotationPresent(ToStringDontResolve.class), depth));
+                } catch (IllegalAccessException e) {
+                    /* IGNORE */
+                }
+            }
+        }
+
+        return firstError;
+    }
+
+    /**
+     * Check if a given field should be included in the string representation.
+     * Depends on ignore annotation and final and static modifiers but not on visibility.
+     *
+     * @param field The field to check.
+     * @return Whether the field should be included in the string representation.
+     */
+    private static boolean isFieldIncluded(Field field) {
+        if (Modifier.isFinal(field.getModifiers())) {
+            return false;
+        }
+
+        if (Modifier.isStatic(field.getModifiers())) {
+            return false;
+        }
+
+        return field.getAnnotation(ToStringIgnore.class) == null;
+    }
+
+    /**
+     * Validate the annotations on a given field to detect incompabilities.
+     *
+     * @param field The field to validate.
+     * @return A description of the incompatibility, or {@code null} if the annotations are valid.
+     */
+    private static String validateFieldAnnotations(Field field) {
+        if (field.getAnnotation(ToStringDontResolve.class) != null) {
+            if (field.getAnnotation(ToStringIgnore.class) != null) {
+                return "annotations " + ToStringIgnore.class.getSimpleName() + " and " + ToStringDontResolve.class.getSimpleName() + " are not compatible";
+            }
+
+            if (!TypeCategory.of(field.getType()).isContainer()) {
+                return "annotation " + ToStringDontResolve.class + " is not supported for field " + field.getName() + " of type " + field.getType().getSimpleName();
+            }
+        }
+
+        return null;
+    }
+
+}
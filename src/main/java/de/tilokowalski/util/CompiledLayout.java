@@ -0,0 +1,142 @@
+package de.tilokowalski.util;
+
+import lombok.Getter;
+
+/**
+ * The layout of a class compiled for a certain delimiter and level of class hierarchy.
+ * All literals written between the values are concatenated upfront, and each field gets a value writer
+ * which is chosen once from its declared type, so appending the fields is a straight loop without any branching
+ * on the delimiter. Values are formatted by the formatter of their class, nested objects are handed back to the {@link Traversal}.
+ * Used by {@link ToStringEngine#COMPILED}.
+ */
+final class CompiledLayout {
+
+    /**
+     * The delimiter the layout was compiled for.
+     */
+    @Getter
+    private final char delimiter;
+
+    /**
+     * The level of class hierarchy the layout was compiled for, as index of the class metadata.
+     */
+    @Getter
+    private final int levelIndex;
+
+    /**
+     * Literal written before each value, i.e. the delimiter (unless multi-line or first) followed by the field name and equal sign.
+     */
+    private final String[] labels;
+
+    /**
+     * The fields of the layout.
+     */
+    private final FieldMetadata[] fields;
+
+    /**
+     * The value writer of each field.
+     */
+    private final ValueWriter[] writers;
+
+    /**
+     * Compiles the layout of a class.
+     *
+     * @param metadata The metadata of the class.
+     * @param delimiter The character to be used as delimiter.
+     * @param levelIndex The level of class hierarchy, as index of the class metadata.
+     * @param fieldCount The number of fields included up to the level.
+     */
+    CompiledLayout(ClassMetadata metadata, char delimiter, int levelIndex, int fieldCount) {
+        this.delimiter = delimiter;
+        this.levelIndex = levelIndex;
+        this.labels = new String[fieldCount];
+        this.fields = new FieldMetadata[fieldCount];
+        this.writers = new ValueWriter[fieldCount];
+
+        for (int i = 0; i < fieldCount; i++) {
+            FieldMetadata field = metadata.getField(i);
+
+            String label = field.getName() + "=";
+
+            if (i > 0 && !isMultiLine()) {
+                label = delimiter + label;
+            }
+
+            labels[i] = label;
+            fields[i] = field;
+            writers[i] = compileWriter(field);
+        }
+    }
+
+    /**
+     * Append a field of an object to the sink that is passed through.
+     *
+     * @param traversal The traversal in progress, used for values of types without specialized writer.
+     * @param result The sink to write to.
+     * @param object The object whose field to append.
+     * @param index The position of the field.
+     * @param nesting The depth of the object, used for indentation if multi-line.
+     * @return The value of the field if it is a nested object still to be written, otherwise {@code null}.
+     * @throws Exception When any error occurs while appending the field.
+     */
+    Object appendField(Traversal traversal, RenderSink result, Object object, int index, int nesting) throws Exception {
+        if (isMultiLine()) {
+            if (index > 0) {
+                result.append(delimiter);
+            }
+
+            traversal.appendIndentation(nesting);
+        }
+
+        result.append(labels[index]);
+        return writers[index].write(traversal, result, fields[index], object);
+    }
+
+    /**
+     * Check whether the layout separates fields by line breaks and indentation.
+     *
+     * @return Whether the layout is multi-line.
+     */
+    private boolean isMultiLine() {
+        return delimiter == ToString.TS_DELIMITER_ML;
+    }
+
+    /**
+     * Choose the value writer for a field by its declared type.
+     * Primitive fields are appended without boxing, any other value is formatted by its {@link ToStringFormatter} if it has one.
+     *
+     * @param field The field to choose the writer for.
+     * @return The value writer of the field.
+     */
+    private static ValueWriter compileWriter(FieldMetadata field) {
+        if (field.getCategory() == TypeCategory.PRIMITIVE) {
+            return (traversal, result, metadata, object) -> {
+                metadata.getAccessor().appendPrimitive(result, object);
+                return null;
+            };
+        }
+
+        return (traversal, result, metadata, object) -> traversal.appendValue(metadata.getAccessor().get(object));
+    }
+
+    /**
+     * Writer appending the value of a single field.
+     */
+    @FunctionalInterface
+    interface ValueWriter {
+
+        /**
+         * Append the value of a field to the sink that is passed through.
+         *
+         * @param traversal The traversal in progress.
+         * @param result The sink to write to.
+         * @param field The metadata of the field whose value to append.
+         * @param object The object from which to get the field's value.
+         * @return The value of the field if it is a nested object still to be written, otherwise {@code null}.
+         * @throws Exception When any error occurs while appending the value.
+         */
+        Object write(Traversal traversal, RenderSink result, FieldMetadata field, Object object) throws Exception;
+
+    }
+
+}
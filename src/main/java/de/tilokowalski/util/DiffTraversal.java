@@ -0,0 +1,425 @@
+package de.tilokowalski.util;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Traverses two states of an object graph side by side and writes the paths of all values that differ, with both values.
+ * The fields of each object are taken from the same metadata as when creating a string representation, so the level of
+ * class hierarchy and the annotations apply alike. Identical objects are skipped right away without visiting their fields,
+ * so the cost of a diff depends on the part of the graph that has been copied or changed, not on the size of the whole graph.
+ * Lists and arrays are compared by position, sets by membership and maps by key, elements and keys missing in one of the
+ * states are written as {@value #TS_EXPR_ABSENT}.
+ * Pending pairs of objects are kept on a stack of its own, so arbitrarily deep object graphs can be compared.
+ */
+final class DiffTraversal {
+
+    /**
+     * Separator between a path and the values that differ.
+     */
+    private static final String TS_PATH_SEPARATOR = ": ";
+
+    /**
+     * Separator between the value before and the value after.
+     */
+    private static final String TS_CHANGE_SEPARATOR = " -> ";
+
+    /**
+     * Expression of an element or key missing in one of the states.
+     */
+    static final String TS_EXPR_ABSENT = "ABSENT";
+
+    /**
+     * Placeholder of an element or key missing in one of the states, distinct from an element or value {@code null}.
+     */
+    private static final Object ABSENT = new Object();
+
+    /**
+     * Level of class hierarchy to be explored.
+     */
+    private final int level;
+
+    /**
+     * The result the differences are written to, one per line.
+     */
+    private final StringBuilder result = new StringBuilder();
+
+    /**
+     * The pairs of values still to be compared, the next one on top.
+     */
+    private final Deque<Pair> pending = new ArrayDeque<>();
+
+    /**
+     * Objects of the state before that have already been compared, with the object of the state after they have been compared with.
+     */
+    private final Map<Object, Object> compared = new IdentityHashMap<>();
+
+    /**
+     * Creates a diff of two states.
+     *
+     * @param level Level of class hierarchy to be explored.
+     */
+    DiffTraversal(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Compare two states of an object graph.
+     *
+     * @param before The state before.
+     * @param after The state after.
+     * @return The differing paths with their values, one per line, or an empty string if both states are equal.
+     * @throws Exception When the fields of an object can not be read.
+     */
+    String diff(Object before, Object after) throws Exception {
+        Object root = before != null ? before : after;
+        String name = root == null ? ToString.TS_EXPR_NULL : root.getClass().getSimpleName();
+
+        pending.push(new Pair(before, after, new Path(null, name, -1, null), false));
+
+        while (!pending.isEmpty()) {
+            compare(pending.pop());
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Compare a pair of values, writing the difference if they are values that differ or pushing their nested values to be compared.
+     *
+     * @param pair The values to compare.
+     * @throws Exception When the fields of an object can not be read.
+     */
+    private void compare(Pair pair) throws Exception {
+        Object before = pair.before;
+        Object after = pair.after;
+
+        if (before == after) {
+            return;
+        }
+
+        if (pair.leaf && before != null && after != null) {
+            appendChangeIfWrittenDifferently(pair);
+            return;
+        }
+
+        if (before == null || after == null || before == ABSENT || after == ABSENT || before.getClass() != after.getClass()) {
+            appendChange(pair);
+            return;
+        }
+
+        if (FormatterRegistry.find(before.getClass()) != null) {
+            if (!before.equals(after)) {
+                appendChange(pair);
+            }
+
+            return;
+        }
+
+        if (before instanceof Optional<?> optionalBefore) {
+            pending.push(new Pair(optionalBefore.orElse(null), ((Optional<?>) after).orElse(null), pair.path, false));
+            return;
+        }
+
+        if (compared.get(before) == after) {
+            return;
+        }
+
+        compared.put(before, after);
+
+        ClassMetadata metadata = ClassMetadata.of(before.getClass());
+
+        switch (metadata.getCategory()) {
+            case ARRAY -> {
+                if (before.getClass().getComponentType().isPrimitive()) {
+                    if (!Objects.deepEquals(before, after)) {
+                        pushPrimitiveElements(before, after, pair.path);
+                    }
+                } else {
+                    pushElements(Arrays.asList((Object[]) before), Arrays.asList((Object[]) after), pair.path);
+                }
+            }
+            case COLLECTION -> {
+                if (before instanceof Set<?> setBefore) {
+                    pushMembers(setBefore, (Set<?>) after, pair.path);
+                } else {
+                    pushElements((Collection<?>) before, (Collection<?>) after, pair.path);
+                }
+            }
+            case MAP -> pushEntries((Map<?, ?>) before, (Map<?, ?>) after, pair.path);
+            default -> pushFields(metadata, before, after, pair);
+        }
+    }
+
+    /**
+     * Push the fields of two objects of the same class to be compared, in the order of the fields.
+     * Primitive fields are compared right away, fields not to be resolved only by the form they are written in.
+     *
+     * @param metadata The metadata of the class of both objects.
+     * @param before The object before.
+     * @param after The object after.
+     * @param pair The pair of both objects.
+     * @throws Exception When the fields can not be read.
+     */
+    private void pushFields(ClassMetadata metadata, Object before, Object after, Pair pair) throws Exception {
+        metadata.validate(level);
+
+        List<Pair> changed = new ArrayList<>();
+
+        for (int i = 0, count = metadata.getFieldCount(level); i < count; i++) {
+            FieldMetadata field = metadata.getField(i);
+            Object valueBefore = field.getAccessor().get(before);
+            Object valueAfter = field.getAccessor().get(after);
+            boolean primitive = field.getCategory() == TypeCategory.PRIMITIVE;
+
+            if (primitive ? !valueBefore.equals(valueAfter) : valueBefore != valueAfter) {
+                Path path = new Path(pair.path, field.getName(), -1, null);
+                changed.add(new Pair(valueBefore, valueAfter, path, primitive || field.isDontResolve()));
+            }
+        }
+
+        pushAll(changed);
+    }
+
+    /**
+     * Push the elements of two collections to be compared, by their position in iteration order.
+     * Elements missing in one of the collections are compared with {@link #ABSENT}.
+     *
+     * @param before The collection before.
+     * @param after The collection after.
+     * @param path The path of the collections.
+     */
+    private void pushElements(Collection<?> before, Collection<?> after, Path path) {
+        List<Pair> elements = new ArrayList<>(Math.max(before.size(), after.size()));
+        Iterator<?> iteratorBefore = before.iterator();
+        Iterator<?> iteratorAfter = after.iterator();
+
+        for (int index = 0; iteratorBefore.hasNext() || iteratorAfter.hasNext(); index++) {
+            Object elementBefore = iteratorBefore.hasNext() ? iteratorBefore.next() : ABSENT;
+            Object elementAfter = iteratorAfter.hasNext() ? iteratorAfter.next() : ABSENT;
+
+            if (elementBefore != elementAfter) {
+                elements.add(new Pair(elementBefore, elementAfter, new Path(path, null, index, null), false));
+            }
+        }
+
+        pushAll(elements);
+    }
+
+    /**
+     * Push the elements of two sets to be compared that are only contained in one of them, removed elements first.
+     * Elements contained in both sets are equal, so they are not compared any further.
+     *
+     * @param before The set before.
+     * @param after The set after.
+     * @param path The path of the sets.
+     */
+    private void pushMembers(Set<?> before, Set<?> after, Path path) {
+        List<Pair> members = new ArrayList<>();
+
+        for (Object element : before) {
+            if (!after.contains(element)) {
+                members.add(new Pair(element, ABSENT, new Path(path, null, -1, element), false));
+            }
+        }
+
+        for (Object element : after) {
+            if (!before.contains(element)) {
+                members.add(new Pair(ABSENT, element, new Path(path, null, -1, element), false));
+            }
+        }
+
+        pushAll(members);
+    }
+
+    /**
+     * Push the differing elements of two arrays of the same primitive component type to be compared, by their position.
+     * Elements missing in one of the arrays are compared with {@link #ABSENT}.
+     *
+     * @param before The array before.
+     * @param after The array after.
+     * @param path The path of the arrays.
+     */
+    private void pushPrimitiveElements(Object before, Object after, Path path) {
+        List<Pair> elements = new ArrayList<>();
+        int lengthBefore = Array.getLength(before);
+        int lengthAfter = Array.getLength(after);
+
+        for (int index = 0; index < Math.max(lengthBefore, lengthAfter); index++) {
+            Object elementBefore = index < lengthBefore ? Array.get(before, index) : ABSENT;
+            Object elementAfter = index < lengthAfter ? Array.get(after, index) : ABSENT;
+
+            if (!Objects.equals(elementBefore, elementAfter)) {
+                elements.add(new Pair(elementBefore, elementAfter, new Path(path, null, index, null), false));
+            }
+        }
+
+        pushAll(elements);
+    }
+
+    /**
+     * Push the values of two maps to be compared, by their keys.
+     * Values of keys missing in one of the maps are compared with {@link #ABSENT}, so a removed or added key is written even if its value is {@code null}.
+     *
+     * @param before The map before.
+     * @param after The map after.
+     * @param path The path of the maps.
+     */
+    private void pushEntries(Map<?, ?> before, Map<?, ?> after, Path path) {
+        List<Pair> entries = new ArrayList<>();
+
+        for (Map.Entry<?, ?> entry : before.entrySet()) {
+            Object valueAfter = after.get(entry.getKey());
+
+            if (valueAfter == null && !after.containsKey(entry.getKey())) {
+                valueAfter = ABSENT;
+            }
+
+            if (entry.getValue() != valueAfter) {
+                entries.add(new Pair(entry.getValue(), valueAfter, new Path(path, null, -1, entry.getKey()), false));
+            }
+        }
+
+        for (Map.Entry<?, ?> entry : after.entrySet()) {
+            if (!before.containsKey(entry.getKey())) {
+                entries.add(new Pair(ABSENT, entry.getValue(), new Path(path, null, -1, entry.getKey()), false));
+            }
+        }
+
+        pushAll(entries);
+    }
+
+    /**
+     * Push pairs to be compared, so they are popped in their given order.
+     *
+     * @param pairs The pairs to push.
+     */
+    private void pushAll(List<Pair> pairs) {
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            pending.push(pairs.get(i));
+        }
+    }
+
+    /**
+     * Write the path of a pair of values compared without their nested values, followed by both values, if they are written differently.
+     * Values that are not identical but written alike, like copies of a container not to be resolved, are no visible change.
+     *
+     * @param pair The values to compare.
+     */
+    private void appendChangeIfWrittenDifferently(Pair pair) {
+        String before = ToStringRenderer.DEFAULT.render(pair.before);
+        String after = ToStringRenderer.DEFAULT.render(pair.after);
+
+        if (!before.equals(after)) {
+            appendPath(pair.path);
+            result.append(before).append(TS_CHANGE_SEPARATOR).append(after);
+        }
+    }
+
+    /**
+     * Write the path of a pair of differing values, followed by both values.
+     *
+     * @param pair The differing values.
+     */
+    private void appendChange(Pair pair) {
+        appendPath(pair.path);
+        appendValue(pair.before);
+        result.append(TS_CHANGE_SEPARATOR);
+        appendValue(pair.after);
+    }
+
+    /**
+     * Write the path of a difference on a line of its own, followed by the separator of the values.
+     *
+     * @param path The path of the differing values.
+     */
+    private void appendPath(Path path) {
+        if (!result.isEmpty()) {
+            result.append(ToString.TS_DELIMITER_ML);
+        }
+
+        path.appendTo(result);
+        result.append(TS_PATH_SEPARATOR);
+    }
+
+    /**
+     * Write a single value, objects without resolving their nested objects.
+     *
+     * @param value The value to write.
+     */
+    private void appendValue(Object value) {
+        if (value == null) {
+            result.append(ToString.TS_EXPR_NULL);
+        } else if (value == ABSENT) {
+            result.append(TS_EXPR_ABSENT);
+        } else {
+            ToStringRenderer.DEFAULT.renderTo(result, value);
+        }
+    }
+
+    /**
+     * A pair of values at the same path of both states.
+     *
+     * @param before The value before.
+     * @param after The value after.
+     * @param path The path of the values.
+     * @param leaf Whether the values are compared without their nested values, like fields not to be resolved.
+     */
+    private record Pair(Object before, Object after, Path path, boolean leaf) {
+    }
+
+    /**
+     * The path from the compared objects to a value, built from the path of its parent and created as a string only if written.
+     *
+     * @param parent The path of the object or container holding the value, {@code null} for the compared objects.
+     * @param name The name of the field holding the value, or the name of the compared objects, {@code null} for elements.
+     * @param index The position of an element in a collection or array, {@code -1} otherwise.
+     * @param key The key of a value in a map or an element of a set, {@code null} otherwise.
+     */
+    private record Path(Path parent, String name, int index, Object key) {
+
+        /**
+         * Write the path, i.e. the names of the fields separated by dots, the positions and keys of elements and the elements of sets in brackets.
+         *
+         * @param result The StringBuilder to write to.
+         */
+        void appendTo(StringBuilder result) {
+            List<Path> segments = new ArrayList<>();
+
+            for (Path path = this; path != null; path = path.parent) {
+                segments.add(path);
+            }
+
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Path segment = segments.get(i);
+
+                if (segment.name != null) {
+                    if (segment.parent != null) {
+                        result.append('.');
+                    }
+
+                    result.append(segment.name);
+                } else if (segment.index >= 0) {
+                    result.append('[').append(segment.index).append(']');
+                } else {
+                    result.append('[');
+                    ToStringRenderer.DEFAULT.renderTo(result, segment.key);
+                    result.append(']');
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,432 @@
+package de.tilokowalski.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Reads the value of a field, either through a {@link MethodHandle} that is created once per field or record component,
+ * or through a {@link ToStringTemplate} generated at build time.
+ * Primitive fields get a specialized accessor which appends the value without boxing it.
+ */
+abstract class FieldAccessor {
+
+    /**
+     * Lookup used to unreflect the already accessible fields and record component accessors.
+     */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Creates the accessor matching the declared type of a given field.
+     * The field must already be accessible.
+     *
+     * @param field The field to create the accessor for.
+     * @return The accessor of the field.
+     * @throws IllegalAccessException When the field can not be accessed.
+     */
+    static FieldAccessor of(Field field) throws IllegalAccessException {
+        return of(LOOKUP.unreflectGetter(field), field.getType());
+    }
+
+    /**
+     * Creates the accessor matching the declared type of a given record component, calling its accessor method.
+     * The accessor method must already be accessible.
+     *
+     * @param component The record component to create the accessor for.
+     * @return The accessor of the record component.
+     * @throws IllegalAccessException When the accessor method can not be accessed.
+     */
+    static FieldAccessor of(RecordComponent component) throws IllegalAccessException {
+        return of(LOOKUP.unreflect(component.getAccessor()), component.getType());
+    }
+
+    /**
+     * Creates the accessor matching a given type from a handle reading a value of that type.
+     *
+     * @param handle The handle taking the object and returning the value.
+     * @param type The type of the value.
+     * @return The accessor using the handle.
+     */
+    private static FieldAccessor of(MethodHandle handle, Class<?> type) {
+        if (type == int.class) {
+            return new IntAccessor(handle.asType(MethodType.methodType(int.class, Object.class)));
+        } else if (type == long.class) {
+            return new LongAccessor(handle.asType(MethodType.methodType(long.class, Object.class)));
+        } else if (type == boolean.class) {
+            return new BooleanAccessor(handle.asType(MethodType.methodType(boolean.class, Object.class)));
+        } else if (type == char.class) {
+            return new CharAccessor(handle.asType(MethodType.methodType(char.class, Object.class)));
+        } else if (type == double.class) {
+            return new DoubleAccessor(handle.asType(MethodType.methodType(double.class, Object.class)));
+        } else if (type == float.class) {
+            return new FloatAccessor(handle.asType(MethodType.methodType(float.class, Object.class)));
+        } else if (type == byte.class || type == short.class) {
+            return new IntAccessor(handle.asType(MethodType.methodType(int.class, Object.class)));
+        }
+
+        return new ObjectAccessor(handle.asType(MethodType.methodType(Object.class, Object.class)));
+    }
+
+    /**
+     * Creates the accessor for a field provided by a template.
+     *
+     * @param template The template providing the field.
+     * @param index The position of the field within the template.
+     * @return The accessor of the field.
+     */
+    static FieldAccessor of(ToStringTemplate<?> template, int index) {
+        return new TemplateAccessor(template, index);
+    }
+
+    /**
+     * Get the value of the field, boxing primitive values.
+     *
+     * @param object The object from which to get the field's value.
+     * @return The value of the field.
+     * @throws Exception When the value can not be read.
+     */
+    abstract Object get(Object object) throws Exception;
+
+    /**
+     * Append the value of a primitive field to the sink that is passed through, without boxing it.
+     *
+     * @param result The sink to write to.
+     * @param object The object from which to get the field's value.
+     * @throws Exception When the value can not be read or the field is not primitive.
+     */
+    void appendPrimitive(RenderSink result, Object object) throws Exception {
+        throw new Exception("field accessor " + getClass().getSimpleName() + " is not primitive");
+    }
+
+    /**
+     * Convert anything thrown by a getter into an exception that can be passed on.
+     *
+     * @param throwable The throwable caught while invoking the getter.
+     * @return An exception to be thrown instead.
+     */
+    protected static Exception rethrow(Throwable throwable) {
+        if (throwable instanceof Error error) {
+            throw error;
+        }
+
+        if (throwable instanceof Exception exception) {
+            return exception;
+        }
+
+        return new Exception(throwable);
+    }
+
+    /**
+     * Accessor reading the field through a {@link MethodHandle}.
+     */
+    private abstract static class HandleAccessor extends FieldAccessor {
+
+        /**
+         * The getter of the field, adapted to take an {@link Object} and return the declared field type.
+         */
+        protected final MethodHandle getter;
+
+        /**
+         * Creates an accessor for a given getter.
+         *
+         * @param getter The getter of the field, already adapted to the type of the accessor.
+         */
+        private HandleAccessor(MethodHandle getter) {
+            this.getter = getter;
+        }
+
+    }
+
+    /**
+     * Accessor of fields holding references.
+     */
+    private static final class ObjectAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a reference field.
+         *
+         * @param getter The getter of type {@code (Object)Object}.
+         */
+        private ObjectAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (Object) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code int} fields, also used for {@code byte} and {@code short} fields.
+     */
+    private static final class IntAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for an integral field.
+         *
+         * @param getter The getter of type {@code (Object)int}.
+         */
+        private IntAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (int) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((int) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code long} fields.
+     */
+    private static final class LongAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a {@code long} field.
+         *
+         * @param getter The getter of type {@code (Object)long}.
+         */
+        private LongAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (long) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((long) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code boolean} fields.
+     */
+    private static final class BooleanAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a {@code boolean} field.
+         *
+         * @param getter The getter of type {@code (Object)boolean}.
+         */
+        private BooleanAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (boolean) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((boolean) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code char} fields.
+     */
+    private static final class CharAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a {@code char} field.
+         *
+         * @param getter The getter of type {@code (Object)char}.
+         */
+        private CharAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (char) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((char) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code double} fields.
+     */
+    private static final class DoubleAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a {@code double} field.
+         *
+         * @param getter The getter of type {@code (Object)double}.
+         */
+        private DoubleAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (double) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((double) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor of {@code float} fields.
+     */
+    private static final class FloatAccessor extends HandleAccessor {
+
+        /**
+         * Creates an accessor for a {@code float} field.
+         *
+         * @param getter The getter of type {@code (Object)float}.
+         */
+        private FloatAccessor(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        Object get(Object object) throws Exception {
+            try {
+                return (float) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            try {
+                result.append((float) getter.invokeExact(object));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+    }
+
+    /**
+     * Accessor delegating to a template generated at build time.
+     */
+    private static final class TemplateAccessor extends FieldAccessor {
+
+        /**
+         * The template providing the field, with its type parameter erased.
+         */
+        @SuppressWarnings("rawtypes")
+        private final ToStringTemplate template;
+
+        /**
+         * The position of the field within the template.
+         */
+        private final int index;
+
+        /**
+         * The declared type of the field.
+         */
+        private final Class<?> type;
+
+        /**
+         * Creates an accessor for a field provided by a template.
+         *
+         * @param template The template providing the field.
+         * @param index The position of the field within the template.
+         */
+        private TemplateAccessor(ToStringTemplate<?> template, int index) {
+            this.template = template;
+            this.index = index;
+            this.type = template.getFields().get(index).type();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object get(Object object) {
+            return template.get(object, index);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void appendPrimitive(RenderSink result, Object object) throws Exception {
+            if (type == int.class || type == short.class || type == byte.class) {
+                result.append(template.getInt(object, index));
+            } else if (type == long.class) {
+                result.append(template.getLong(object, index));
+            } else if (type == boolean.class) {
+                result.append(template.getBoolean(object, index));
+            } else if (type == char.class) {
+                result.append(template.getChar(object, index));
+            } else if (type == double.class) {
+                result.append(template.getDouble(object, index));
+            } else if (type == float.class) {
+                result.append(template.getFloat(object, index));
+            } else {
+                super.appendPrimitive(result, object);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package de.tilokowalski.util;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Resolved information about a single field that is included in the string representation.
+ * Instances are created once per field by {@link ClassMetadata} and shared between all conversions.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class FieldMetadata {
+
+    /**
+     * The declared type of the field.
+     */
+    private final Class<?> type;
+
+    /**
+     * The accessor reading the value of the field.
+     */
+    private final FieldAccessor accessor;
+
+    /**
+     * The name of the field as it appears in the string representation.
+     */
+    private final String name;
+
+    /**
+     * Category of the declared type of the field.
+     */
+    private final TypeCategory category;
+
+    /**
+     * Whether the field is annotated with {@link ToStringDontResolve}.
+     */
+    private final boolean dontResolve;
+
+    /**
+     * Level of class hierarchy the field is declared in, starting with {@code 0} for the class itself.
+     */
+    private final int depth;
+
+}
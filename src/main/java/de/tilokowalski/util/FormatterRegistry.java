@@ -0,0 +1,207 @@
+package de.tilokowalski.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link ToStringFormatter formatters} of values written as a single value.
+ * Formatters are resolved once per exact runtime class and cached by a {@link ClassValue}, so looking up the formatter
+ * of a value costs neither a chain of type checks nor a map lookup. Built-in formatters cover common types of the JDK,
+ * formatters registered by users take precedence over them.
+ */
+final class FormatterRegistry {
+
+    /**
+     * The formatters registered by users by the exact class they format.
+     */
+    private static final Map<Class<?>, ToStringFormatter<?>> REGISTERED = new ConcurrentHashMap<>();
+
+    /**
+     * The built-in formatters by the exact class they format.
+     */
+    private static final Map<Class<?>, ToStringFormatter<?>> BUILT_IN = new HashMap<>();
+
+    /**
+     * Cache of the formatter of each class, containing {@code null} for classes without formatter.
+     */
+    private static final ClassValue<ToStringFormatter<Object>> CACHE = new ClassValue<>() {
+        @Override
+        protected ToStringFormatter<Object> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    static {
+        builtIn(String.class, (value, result) -> result.append('"').append(value).append('"'));
+        builtIn(Boolean.class, (value, result) -> result.append(value.booleanValue()));
+        builtIn(Character.class, (value, result) -> result.append(value.charValue()));
+        builtIn(Integer.class, (value, result) -> result.append(value.intValue()));
+        builtIn(Long.class, (value, result) -> result.append(value.longValue()));
+        builtIn(Short.class, (value, result) -> result.append(value.shortValue()));
+        builtIn(Byte.class, (value, result) -> result.append(value.byteValue()));
+        builtIn(Double.class, (value, result) -> result.append(value.doubleValue()));
+        builtIn(Float.class, (value, result) -> result.append(value.floatValue()));
+        builtIn(BigDecimal.class, (value, result) -> result.append(value));
+        builtIn(BigInteger.class, (value, result) -> result.append(value));
+        builtIn(UUID.class, (value, result) -> result.append(value));
+    }
+
+    /**
+     * Prevents instantiation of this static registry.
+     */
+    private FormatterRegistry() {
+    }
+
+    /**
+     * Find the formatter of a given class.
+     *
+     * @param type The exact runtime class of a value.
+     * @return The formatter of the class, or {@code null} if values of the class are objects to be resolved.
+     */
+    static ToStringFormatter<Object> find(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /**
+     * Register a formatter, replacing any formatter registered or built-in for the same class.
+     *
+     * @param type The exact class to format, subclasses are not affected.
+     * @param formatter The formatter to register.
+     */
+    static void register(Class<?> type, ToStringFormatter<?> formatter) {
+        REGISTERED.put(type, formatter);
+        CACHE.remove(type);
+    }
+
+    /**
+     * Resolve the formatter of a class, which is then cached.
+     * The formatters of date and time classes are only created when the first such class is resolved.
+     * Besides exact classes, subclasses of {@link Enum}, {@link Number} and {@link Date} are always formatted as a single value.
+     *
+     * @param type The class to resolve the formatter for.
+     * @return The formatter of the class, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private static ToStringFormatter<Object> resolve(Class<?> type) {
+        ToStringFormatter<?> formatter = REGISTERED.get(type);
+
+        if (formatter == null) {
+            formatter = BUILT_IN.get(type);
+        }
+
+        if (formatter == null && TemporalFormatters.TS_PACKAGE.equals(type.getPackageName())) {
+            formatter = TemporalFormatters.BUILT_IN.get(type);
+        }
+
+        if (formatter == null) {
+            if (Enum.class.isAssignableFrom(type)) {
+                formatter = (ToStringFormatter<Enum<?>>) (value, result) -> result.append(value.name());
+            } else if (Date.class.isAssignableFrom(type)) {
+                formatter = (ToStringFormatter<Date>) TemporalFormatters::formatDate;
+            } else if (Number.class.isAssignableFrom(type)) {
+                formatter = (value, result) -> result.append(value);
+            }
+        }
+
+        return (ToStringFormatter<Object>) formatter;
+    }
+
+    /**
+     * Add a built-in formatter.
+     *
+     * @param <T> The class to format.
+     * @param type The exact class to format.
+     * @param formatter The formatter of the class.
+     */
+    private static <T> void builtIn(Class<T> type, ToStringFormatter<T> formatter) {
+        BUILT_IN.put(type, formatter);
+    }
+
+    /**
+     * Holder of the built-in formatters of date and time values, initialized only when the first such value is resolved,
+     * so conversions that never meet a date pay neither for building the patterns nor for looking up the default time zone.
+     */
+    private static final class TemporalFormatters {
+
+        /**
+         * Package of the date and time classes of the JDK.
+         */
+        private static final String TS_PACKAGE = "java.time";
+
+        /**
+         * Pattern of {@link Date} values, formatted in the default time zone.
+         */
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+        /**
+         * The built-in formatters of date and time classes by the exact class they format.
+         */
+        private static final Map<Class<?>, ToStringFormatter<?>> BUILT_IN = new HashMap<>();
+
+        /**
+         * Format of {@link Date} values for the time zone used last, replaced when the default time zone changes.
+         */
+        private static volatile DateTimeFormatter dateFormat = DATE_FORMAT.withZone(ZoneId.systemDefault());
+
+        static {
+            builtIn(LocalDate.class, (value, result) -> DateTimeFormatter.ISO_LOCAL_DATE.formatTo(value, result));
+            builtIn(LocalDateTime.class, (value, result) -> DateTimeFormatter.ISO_LOCAL_DATE_TIME.formatTo(value, result));
+            builtIn(LocalTime.class, (value, result) -> DateTimeFormatter.ISO_LOCAL_TIME.formatTo(value, result));
+            builtIn(Instant.class, (value, result) -> DateTimeFormatter.ISO_INSTANT.formatTo(value, result));
+            builtIn(OffsetDateTime.class, (value, result) -> DateTimeFormatter.ISO_OFFSET_DATE_TIME.formatTo(value, result));
+            builtIn(ZonedDateTime.class, (value, result) -> DateTimeFormatter.ISO_ZONED_DATE_TIME.formatTo(value, result));
+            builtIn(Duration.class, (value, result) -> result.append(value));
+        }
+
+        /**
+         * Prevents instantiation of this static holder.
+         */
+        private TemporalFormatters() {
+        }
+
+        /**
+         * Format a legacy {@link Date} in the default time zone, reusing the thread-safe formatter as long as the time zone does not change.
+         *
+         * @param date The date to format.
+         * @param result The StringBuilder to append to.
+         */
+        private static void formatDate(Date date, StringBuilder result) {
+            ZoneId zone = ZoneId.systemDefault();
+            DateTimeFormatter format = dateFormat;
+
+            if (!zone.equals(format.getZone())) {
+                format = DATE_FORMAT.withZone(zone);
+                dateFormat = format;
+            }
+
+            format.formatTo(Instant.ofEpochMilli(date.getTime()), result);
+        }
+
+        /**
+         * Add a built-in formatter of a date or time class.
+         *
+         * @param <T> The class to format.
+         * @param type The exact class to format.
+         * @param formatter The formatter of the class.
+         */
+        private static <T> void builtIn(Class<T> type, ToStringFormatter<T> formatter) {
+            BUILT_IN.put(type, formatter);
+        }
+
+    }
+
+}
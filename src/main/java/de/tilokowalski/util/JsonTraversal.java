@@ -0,0 +1,804 @@
+package de.tilokowalski.util;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Traverses an object graph like {@link Traversal}, but writes it as JSON to the sink of the traversal it belongs to.
+ * The fields, the level of class hierarchy, the annotations, resolving of nested objects and circular references
+ * are the same as for the string representation, and the conversion is counted and limited by the same traversal.
+ * Objects become JSON objects with their simple class name as member {@value #TS_JSON_CLASS}, collections and arrays
+ * become JSON arrays and maps become JSON objects. Nested objects are kept on an explicit stack, like by {@link Traversal},
+ * and every value is written straight to the sink, without building a tree of the document first.
+ */
+final class JsonTraversal {
+
+    /**
+     * Name of the member holding the simple class name of an object.
+     */
+    private static final String TS_JSON_CLASS = "@class";
+
+    /**
+     * Name of the member marking an object that has already been written, with {@link ToString#TS_EXPR_CIRC_REF} as value.
+     */
+    private static final String TS_JSON_REF = "@ref";
+
+    /**
+     * Name of the member holding the size of a collection, map or array that is not resolved.
+     */
+    private static final String TS_JSON_SIZE = "@size";
+
+    /**
+     * Name of the member marking content omitted because of the budget, with the number of omitted elements as value.
+     */
+    private static final String TS_JSON_OMITTED = "@omitted";
+
+    /**
+     * Literal of a missing value.
+     */
+    private static final String TS_JSON_NULL = "null";
+
+    /**
+     * Hexadecimal digits of escaped control characters.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The traversal this traversal belongs to, counting the conversion and writing encoded byte arrays.
+     */
+    private final Traversal owner;
+
+    /**
+     * State of the conversion, shared with the traversal this traversal belongs to.
+     */
+    private final RenderContext context;
+
+    /**
+     * The configuration of the conversion.
+     */
+    private final ToStringRenderer renderer;
+
+    /**
+     * Level of class hierarchy to be explored.
+     */
+    private final int level;
+
+    /**
+     * Whether the document is indented, one member or element per line.
+     */
+    private final boolean multiLine;
+
+    /**
+     * Whether each document is terminated by a line break, as a line of JSON Lines.
+     */
+    private final boolean lines;
+
+    /**
+     * Maximum depth of nested objects below the converted object.
+     */
+    private final int maxDepth;
+
+    /**
+     * Maximum number of elements written per container.
+     */
+    private final int maxElements;
+
+    /**
+     * Buffer reused to format values before they are escaped.
+     */
+    private final StringBuilder buffer = new StringBuilder(32);
+
+    /**
+     * The stack of frames, of which the first {@link #depth} are in use.
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /**
+     * Number of frames currently on the stack.
+     */
+    private int depth;
+
+    /**
+     * The sink to write to during a conversion.
+     */
+    private RenderSink result;
+
+    /**
+     * Format in which resolved {@code byte[]} arrays are written, as configured when the conversion started.
+     */
+    private ToStringByteFormat byteFormat;
+
+    /**
+     * Creates a traversal writing JSON for another traversal.
+     *
+     * @param owner The traversal this traversal belongs to.
+     * @param context State of the conversion.
+     * @param renderer The configuration of the conversion.
+     */
+    JsonTraversal(Traversal owner, RenderContext context, ToStringRenderer renderer) {
+        this.owner = owner;
+        this.context = context;
+        this.renderer = renderer;
+        this.level = renderer.getLevel();
+        this.lines = renderer.getFormat() == ToStringFormat.JSON_LINES;
+        this.multiLine = !lines && renderer.getDelimiter() == ToString.TS_DELIMITER_ML;
+        this.maxDepth = renderer.getBudget().getMaxDepth();
+        this.maxElements = renderer.getBudget().getMaxElements();
+    }
+
+    /**
+     * Write an object and all nested objects as a JSON document.
+     * Errors of nested objects are reported and {@code null} is written instead of them,
+     * errors of the object itself abort the conversion.
+     *
+     * @param result The sink to write to.
+     * @param object The object to be written.
+     * @param nesting The depth of the object, used for indentation.
+     * @throws Exception When the object can not be converted.
+     */
+    void render(RenderSink result, Object object, int nesting) throws Exception {
+        int base = depth;
+
+        this.result = result;
+        this.byteFormat = ToString.getByteFormat();
+
+        try {
+            appendValue(object, nesting, renderer.isResolve());
+
+            while (depth > base) {
+                step(frames.get(depth - 1));
+            }
+
+            if (lines) {
+                result.append('\n');
+            }
+        } finally {
+            while (depth > base) {
+                pop();
+            }
+
+            this.result = null;
+        }
+    }
+
+    /**
+     * Write a value, or start writing a nested object and push a frame if its fields or elements have to be written.
+     *
+     * @param value The value to write.
+     * @param nesting The depth of the value, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @throws Exception When the value can not be converted.
+     */
+    private void appendValue(Object value, int nesting, boolean resolve) throws Exception {
+        if (value == null) {
+            result.append(TS_JSON_NULL);
+            return;
+        }
+
+        ToStringFormatter<Object> formatter = renderer.findFormatter(value.getClass());
+
+        if (formatter != null) {
+            appendScalar(value, formatter);
+            return;
+        }
+
+        if (value instanceof Optional<?> optional) {
+            appendValue(optional.orElse(null), nesting, resolve);
+            return;
+        }
+
+        open(value, nesting, resolve);
+    }
+
+    /**
+     * Write a nested value, reporting its errors and writing {@code null} instead of it.
+     *
+     * @param value The value to write.
+     * @param nesting The depth of the value, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     */
+    private void appendNested(Object value, int nesting, boolean resolve) {
+        try {
+            appendValue(value, nesting, resolve);
+        } catch (UncheckedIOException | BufferOverflowException | BudgetExhaustedException e) {
+            throw e;
+        } catch (Exception e) {
+            owner.reportError(e);
+            result.append(TS_JSON_NULL);
+        }
+    }
+
+    /**
+     * Start writing an object, collection, map or array and push a frame if its fields or elements have to be written.
+     * Nothing is written before the object is known to be convertible, so a failing object can be replaced by {@code null}.
+     *
+     * @param object The object to write.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @throws Exception When the object can not be converted.
+     */
+    private void open(Object object, int nesting, boolean resolve) throws Exception {
+        owner.countNode(nesting);
+
+        ClassMetadata metadata = ClassMetadata.of(object.getClass());
+
+        if (metadata.getCategory() == TypeCategory.OBJECT) {
+            metadata.validate(level);
+        }
+
+        if (context.isResolved(object)) {
+            appendMarker(metadata, TS_JSON_REF, ToString.TS_EXPR_CIRC_REF, nesting);
+            return;
+        }
+
+        if (nesting - owner.getBaseNesting() > maxDepth) {
+            owner.markTruncated();
+            appendMarker(metadata, TS_JSON_OMITTED, null, nesting);
+            return;
+        }
+
+        if (metadata.getCategory() == TypeCategory.ARRAY && object.getClass().getComponentType().isPrimitive()) {
+            appendPrimitiveArray(object, metadata, nesting, resolve);
+            return;
+        }
+
+        if (metadata.getCategory().isContainer()) {
+            Collection<?> collection;
+            boolean map = object instanceof Map<?, ?>;
+
+            if (object instanceof Collection<?> objectCollection) {
+                collection = objectCollection;
+            } else if (map) {
+                collection = ((Map<?, ?>) object).entrySet();
+            } else {
+                collection = Arrays.asList((Object[]) object);
+            }
+
+            if (!resolve) {
+                appendSize(metadata, collection.size(), nesting);
+                return;
+            }
+
+            if (collection.isEmpty()) {
+                result.append(map ? "{}" : "[]");
+                return;
+            }
+
+            context.enterContainer(object);
+            result.append(map ? '{' : '[');
+            push(object, null, collection.iterator(), map, collection.size(), nesting, resolve);
+            return;
+        }
+
+        int fieldCount = nesting > 0 && !resolve ? 0 : metadata.getFieldCount(level);
+
+        appendClass(metadata, nesting);
+
+        if (fieldCount == 0) {
+            close('}', nesting);
+            return;
+        }
+
+        context.markResolved(object);
+        push(object, metadata, null, false, fieldCount, nesting, resolve);
+    }
+
+    /**
+     * Write the next field, element or entry of the frame on top of the stack, or finish the frame if there is none left.
+     *
+     * @param frame The frame on top of the stack.
+     * @throws Exception When any error occurs while writing.
+     */
+    private void step(Frame frame) throws Exception {
+        if (frame.iterator != null) {
+            Object element = null;
+            boolean next;
+
+            try {
+                next = frame.index < maxElements && frame.iterator.hasNext();
+
+                if (next) {
+                    element = frame.iterator.next();
+                }
+            } catch (RuntimeException e) {
+                owner.reportError(e);
+                pop();
+                close(frame.map ? '}' : ']', frame.nesting);
+                return;
+            }
+
+            if (!next) {
+                if (frame.index < frame.count) {
+                    owner.markTruncated();
+                    appendSeparator(frame.index, frame.nesting);
+
+                    if (frame.map) {
+                        appendKey(TS_JSON_OMITTED);
+                        result.append(frame.count - frame.index);
+                    } else {
+                        result.append('{');
+                        appendKey(TS_JSON_OMITTED);
+                        result.append(frame.count - frame.index);
+                        result.append('}');
+                    }
+                }
+
+                pop();
+                close(frame.map ? '}' : ']', frame.nesting);
+                return;
+            }
+
+            appendSeparator(frame.index++, frame.nesting);
+
+            if (frame.map) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+
+                appendKey(entry.getKey());
+                element = entry.getValue();
+            }
+
+            appendNested(element, frame.nesting + 1, frame.resolve);
+            return;
+        }
+
+        if (frame.index < frame.count) {
+            FieldMetadata field = frame.metadata.getField(frame.index++);
+
+            appendSeparator(1, frame.nesting);
+            appendKey(field.getName());
+
+            if (field.getCategory() == TypeCategory.PRIMITIVE) {
+                appendPrimitiveField(field, frame.object);
+                return;
+            }
+
+            Object value;
+
+            try {
+                value = field.getAccessor().get(frame.object);
+            } catch (Exception e) {
+                owner.reportError(e);
+                result.append(TS_JSON_NULL);
+                return;
+            }
+
+            appendNested(value, frame.nesting + 1, frame.resolve && !field.isDontResolve());
+            return;
+        }
+
+        pop();
+        close('}', frame.nesting);
+    }
+
+    /**
+     * Write the value of a primitive field, numbers and booleans as literals, characters and non-finite numbers as strings.
+     *
+     * @param field The metadata of the field.
+     * @param object The object from which to get the field's value.
+     */
+    private void appendPrimitiveField(FieldMetadata field, Object object) {
+        try {
+            Class<?> type = field.getType();
+
+            if (type == int.class || type == long.class || type == boolean.class) {
+                field.getAccessor().appendPrimitive(result, object);
+            } else if (type == float.class) {
+                appendNumber((float) field.getAccessor().get(object));
+            } else {
+                Object value = field.getAccessor().get(object);
+                appendScalar(value, renderer.findFormatter(value.getClass()));
+            }
+        } catch (UncheckedIOException | BufferOverflowException | BudgetExhaustedException e) {
+            throw e;
+        } catch (Exception e) {
+            owner.reportError(e);
+            result.append(TS_JSON_NULL);
+        }
+    }
+
+    /**
+     * Write an array of a primitive component type as JSON array, or {@code byte[]} arrays as string if encoded.
+     *
+     * @param array The array to write.
+     * @param metadata The metadata of the class of the array.
+     * @param nesting The depth of the array, used for indentation.
+     * @param resolve Whether to write the elements or only the length of the array.
+     */
+    private void appendPrimitiveArray(Object array, ClassMetadata metadata, int nesting, boolean resolve) {
+        int length = Array.getLength(array);
+
+        if (!resolve) {
+            appendSize(metadata, length, nesting);
+            return;
+        }
+
+        int count = Math.min(length, maxElements);
+
+        if (array instanceof byte[] bytes && byteFormat != ToStringByteFormat.ELEMENTS) {
+            result.append('"');
+
+            if (byteFormat == ToStringByteFormat.HEX) {
+                owner.appendHex(bytes, count);
+            } else {
+                owner.appendBase64(bytes, count);
+            }
+
+            if (count < length) {
+                owner.markTruncated();
+                result.append(ToString.TS_EXPR_OMITTED);
+            }
+
+            result.append('"');
+            return;
+        }
+
+        if (length == 0) {
+            result.append("[]");
+            return;
+        }
+
+        result.append('[');
+
+        for (int i = 0; i < count; i++) {
+            appendSeparator(i, nesting);
+
+            if (array instanceof int[] values) {
+                result.append(values[i]);
+            } else if (array instanceof long[] values) {
+                result.append(values[i]);
+            } else if (array instanceof boolean[] values) {
+                result.append(values[i]);
+            } else if (array instanceof byte[] values) {
+                result.append(values[i]);
+            } else if (array instanceof short[] values) {
+                result.append(values[i]);
+            } else if (array instanceof double[] values) {
+                appendNumber(values[i]);
+            } else if (array instanceof float[] values) {
+                appendNumber(values[i]);
+            } else {
+                appendString(String.valueOf(((char[]) array)[i]));
+            }
+        }
+
+        if (count < length) {
+            owner.markTruncated();
+            appendSeparator(count, nesting);
+            result.append('{');
+            appendKey(TS_JSON_OMITTED);
+            result.append(length - count);
+            result.append('}');
+        }
+
+        close(']', nesting);
+    }
+
+    /**
+     * Write a value of a class with a formatter: booleans and numbers of the built-in numeric types as literals,
+     * strings and characters as JSON strings of their content, and any other value as JSON string of its formatted text.
+     *
+     * @param value The value to write.
+     * @param formatter The formatter of the class of the value.
+     */
+    private void appendScalar(Object value, ToStringFormatter<Object> formatter) {
+        Class<?> type = value.getClass();
+
+        if (type == String.class) {
+            appendString((String) value);
+        } else if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            result.append(((Number) value).longValue());
+        } else if (type == Boolean.class) {
+            result.append(((Boolean) value).booleanValue());
+        } else if (type == Double.class) {
+            appendNumber(((Double) value).doubleValue());
+        } else if (type == Float.class) {
+            appendNumber(((Float) value).floatValue());
+        } else if (type == BigDecimal.class || type == BigInteger.class) {
+            result.append(value.toString());
+        } else if (type == Character.class) {
+            appendString(value.toString());
+        } else {
+            buffer.setLength(0);
+            formatter.format(value, buffer);
+            appendString(buffer);
+        }
+    }
+
+    /**
+     * Write a floating point number as literal, or as string if it is not finite, which JSON has no literal for.
+     *
+     * @param value The number to write.
+     */
+    private void appendNumber(double value) {
+        if (Double.isFinite(value)) {
+            result.append(value);
+        } else {
+            appendString(Double.toString(value));
+        }
+    }
+
+    /**
+     * Write a single precision floating point number as literal in its shortest form, or as string if it is not finite.
+     * The number is not widened to {@code double}, which would write digits of its binary representation, like {@code 0.10000000149011612}.
+     *
+     * @param value The number to write.
+     */
+    private void appendNumber(float value) {
+        if (Float.isFinite(value)) {
+            result.append(value);
+        } else {
+            appendString(Float.toString(value));
+        }
+    }
+
+    /**
+     * Write a member name followed by the name separator. Keys that are not strings are written as their string representation.
+     *
+     * @param key The key of the member.
+     */
+    private void appendKey(Object key) {
+        if (key instanceof String string) {
+            appendString(string);
+        } else if (key == null) {
+            appendString(TS_JSON_NULL);
+        } else {
+            ToStringFormatter<Object> formatter = renderer.findFormatter(key.getClass());
+
+            buffer.setLength(0);
+
+            if (formatter != null) {
+                formatter.format(key, buffer);
+            } else {
+                ToStringRenderer.DEFAULT.renderTo(buffer, key);
+            }
+
+            appendString(buffer);
+        }
+
+        result.append(':');
+
+        if (multiLine) {
+            result.append(' ');
+        }
+    }
+
+    /**
+     * Write a JSON string, escaping quotation marks, backslashes and control characters.
+     * Runs of characters that need no escaping are passed on to the sink as a whole.
+     *
+     * @param value The characters of the string.
+     */
+    private void appendString(CharSequence value) {
+        int length = value.length();
+        int start = 0;
+
+        result.append('"');
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            if (i > start) {
+                result.append(value, start, i);
+            }
+
+            start = i + 1;
+            result.append('\\');
+
+            switch (c) {
+                case '"', '\\' -> result.append(c);
+                case '\n' -> result.append('n');
+                case '\r' -> result.append('r');
+                case '\t' -> result.append('t');
+                case '\b' -> result.append('b');
+                case '\f' -> result.append('f');
+                default -> {
+                    result.append("u00");
+                    result.append(HEX_DIGITS[c >> 4]);
+                    result.append(HEX_DIGITS[c & 0xF]);
+                }
+            }
+        }
+
+        if (start == 0) {
+            if (value instanceof String string) {
+                result.append(string);
+            } else {
+                result.append(value, 0, length);
+            }
+        } else if (start < length) {
+            result.append(value, start, length);
+        }
+
+        result.append('"');
+    }
+
+    /**
+     * Open a JSON object and write the simple class name as its first member.
+     *
+     * @param metadata The metadata of the class of the object.
+     * @param nesting The depth of the object, used for indentation.
+     */
+    private void appendClass(ClassMetadata metadata, int nesting) {
+        result.append('{');
+        appendSeparator(0, nesting);
+        appendKey(TS_JSON_CLASS);
+        appendString(metadata.getSimpleName());
+    }
+
+    /**
+     * Write a JSON object with the simple class name and a single marker, standing in for an object that is not written.
+     *
+     * @param metadata The metadata of the class of the object.
+     * @param name The name of the marker.
+     * @param value The value of the marker, {@code null} for {@code true}.
+     * @param nesting The depth of the object, used for indentation.
+     */
+    private void appendMarker(ClassMetadata metadata, String name, String value, int nesting) {
+        appendClass(metadata, nesting);
+        appendSeparator(1, nesting);
+        appendKey(name);
+
+        if (value == null) {
+            result.append(true);
+        } else {
+            appendString(value);
+        }
+
+        close('}', nesting);
+    }
+
+    /**
+     * Write a JSON object with the simple class name and the size, standing in for a collection, map or array that is not resolved.
+     *
+     * @param metadata The metadata of the class of the container.
+     * @param size The number of elements of the container.
+     * @param nesting The depth of the container, used for indentation.
+     */
+    private void appendSize(ClassMetadata metadata, int size, int nesting) {
+        appendClass(metadata, nesting);
+        appendSeparator(1, nesting);
+        appendKey(TS_JSON_SIZE);
+        result.append(size);
+        close('}', nesting);
+    }
+
+    /**
+     * Write the separator preceding a member or element, followed by a line break and indentation if indented.
+     *
+     * @param index The position of the member or element, no comma is written for the first one.
+     * @param nesting The depth of the enclosing object or array, used for indentation.
+     */
+    private void appendSeparator(int index, int nesting) {
+        if (index > 0) {
+            result.append(',');
+        }
+
+        if (multiLine) {
+            renderer.appendSeparator(result, nesting);
+        }
+    }
+
+    /**
+     * Close a JSON object or array, on a line of its own if indented.
+     *
+     * @param bracket The closing bracket.
+     * @param nesting The depth of the object or array, used for indentation.
+     */
+    private void close(char bracket, int nesting) {
+        if (multiLine) {
+            renderer.appendSeparator(result, nesting - 1);
+        }
+
+        result.append(bracket);
+    }
+
+    /**
+     * Push a frame on the stack, reusing a frame that has been popped before.
+     *
+     * @param object The object or container of the frame.
+     * @param metadata The metadata of the object, {@code null} for containers.
+     * @param iterator The iterator over the elements or entries of a container, {@code null} for objects.
+     * @param map Whether the iterator is over the entries of a map.
+     * @param count The number of fields to write, or the number of elements of a container.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     */
+    private void push(Object object, ClassMetadata metadata, Iterator<?> iterator, boolean map, int count, int nesting, boolean resolve) {
+        Frame frame;
+
+        if (depth < frames.size()) {
+            frame = frames.get(depth);
+        } else {
+            frame = new Frame();
+            frames.add(frame);
+        }
+
+        frame.object = object;
+        frame.metadata = metadata;
+        frame.iterator = iterator;
+        frame.map = map;
+        frame.index = 0;
+        frame.count = count;
+        frame.nesting = nesting;
+        frame.resolve = resolve;
+
+        depth++;
+    }
+
+    /**
+     * Pop the frame on top of the stack, releasing its references so it can be reused.
+     */
+    private void pop() {
+        Frame frame = frames.get(--depth);
+
+        if (frame.iterator != null) {
+            context.exitContainer(frame.object);
+        }
+
+        frame.object = null;
+        frame.metadata = null;
+        frame.iterator = null;
+    }
+
+    /**
+     * An object or container whose fields or elements are currently being written.
+     */
+    private static final class Frame {
+
+        /**
+         * The object or container being written.
+         */
+        private Object object;
+
+        /**
+         * The metadata of the object, {@code null} for containers.
+         */
+        private ClassMetadata metadata;
+
+        /**
+         * The iterator over the remaining elements or entries of a container, {@code null} for objects.
+         */
+        private Iterator<?> iterator;
+
+        /**
+         * Whether the iterator is over the entries of a map.
+         */
+        private boolean map;
+
+        /**
+         * Position of the next field or element to write.
+         */
+        private int index;
+
+        /**
+         * Number of fields to write, or the number of elements of a container.
+         */
+        private int count;
+
+        /**
+         * The depth of the object, used for indentation.
+         */
+        private int nesting;
+
+        /**
+         * Whether to resolve nested objects or not.
+         */
+        private boolean resolve;
+
+    }
+
+}
@@ -0,0 +1,368 @@
+package de.tilokowalski.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the string representations of immutable objects written by a certain renderer, by the identity of the objects.
+ * The objects are referenced weakly, also the nested objects a representation depends on, so caching an object never
+ * prevents it or any of its nested objects from being garbage collected.
+ * Lookups read a concurrent map without any lock, only adding representations is serialized. When the cache is full,
+ * representations are evicted in the order they have been added, except for those found since they were last considered,
+ * which get a second chance, approximating least recently used eviction without writing on each hit.
+ * Representations depend on the configuration of the renderer, so each renderer has its own cache.
+ */
+final class RenderCache {
+
+    /**
+     * Maximum number of cached representations.
+     */
+    private final int maxSize;
+
+    /**
+     * The cached representations.
+     */
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The keys in the order they are considered for eviction, guarded by this cache.
+     */
+    private final ArrayDeque<Key> order = new ArrayDeque<>();
+
+    /**
+     * Queue of the keys whose objects have been garbage collected.
+     */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /**
+     * Number of representations written from the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of representations not found in the cache or not reusable.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of representations evicted because the cache was full or their object has been garbage collected.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize Maximum number of cached representations.
+     */
+    RenderCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Find the cached representation of an object, without taking any lock.
+     *
+     * @param object The object whose representation to find.
+     * @return The cached representation, or {@code null} if there is none.
+     */
+    Fragment find(Object object) {
+        Entry entry = entries.get(new Lookup(object));
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+
+        return entry.fragment;
+    }
+
+    /**
+     * Cache the representation of an object, replacing any representation cached before.
+     *
+     * @param object The object whose representation to cache.
+     * @param fragment The representation of the object.
+     */
+    synchronized void put(Object object, Fragment fragment) {
+        expunge();
+
+        Key key = new Key(object, collected);
+
+        if (entries.put(key, new Entry(fragment)) == null) {
+            order.add(key);
+        }
+
+        while (entries.size() > maxSize) {
+            Key eldest = order.poll();
+            Entry entry = entries.get(eldest);
+
+            if (entry == null) {
+                continue; /* ALREADY EXPUNGED */
+            }
+
+            if (entry.referenced) {
+                entry.referenced = false;
+                order.add(eldest);
+            } else {
+                entries.remove(eldest);
+                evictions.increment();
+            }
+        }
+
+        if (order.size() > 2 * Math.max(maxSize, entries.size())) {
+            order.removeIf(eldest -> eldest.get() == null);
+        }
+    }
+
+    /**
+     * Count a representation written from the cache.
+     */
+    void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Count a representation not found in the cache or not reusable.
+     */
+    void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Get the current counters of this cache.
+     *
+     * @return The statistics of this cache.
+     */
+    ToStringCacheStatistics getStatistics() {
+        synchronized (this) {
+            expunge();
+        }
+
+        return new ToStringCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    /**
+     * Reference objects weakly, so a cached representation does not keep the nested objects it depends on alive.
+     *
+     * @param objects The objects to reference.
+     * @return The weak references to the objects.
+     */
+    static WeakReference<?>[] weakly(Object[] objects) {
+        WeakReference<?>[] references = new WeakReference<?>[objects.length];
+
+        for (int i = 0; i < objects.length; i++) {
+            references[i] = new WeakReference<>(objects[i]);
+        }
+
+        return references;
+    }
+
+    /**
+     * Remove the representations whose objects have been garbage collected, guarded by this cache.
+     */
+    private void expunge() {
+        for (Object key = collected.poll(); key != null; key = collected.poll()) {
+            if (entries.remove(key) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * The cached representation of an object, which is only valid for the conversion parameters it has been written with.
+     * Nested objects that have been garbage collected since can not be part of any later conversion, so they are skipped.
+     *
+     * @param text The string representation of the object.
+     * @param nesting The depth the object has been written at.
+     * @param resolve Whether nested objects have been resolved.
+     * @param byteFormat The format byte arrays have been written in.
+     * @param visited All nested objects checked while writing the object, excluding the object itself.
+     * @param resolved All nested objects resolved while writing the object, excluding the object itself.
+     * @param resolvedSelf Whether the object itself has been resolved.
+     */
+    record Fragment(String text, int nesting, boolean resolve, ToStringByteFormat byteFormat,
+                    WeakReference<?>[] visited, WeakReference<?>[] resolved, boolean resolvedSelf) {
+
+        /**
+         * Check whether the representation has been written with the given parameters.
+         *
+         * @param nesting The depth the object is written at.
+         * @param resolve Whether nested objects are resolved.
+         * @param byteFormat The format byte arrays are written in.
+         * @return Whether the representation applies.
+         */
+        boolean matches(int nesting, boolean resolve, ToStringByteFormat byteFormat) {
+            return this.nesting == nesting && this.resolve == resolve && this.byteFormat == byteFormat;
+        }
+
+        /**
+         * Check whether any nested object of the representation has already been resolved in a context.
+         * All nested objects are checked, so a forked context records all of them as visited.
+         *
+         * @param context The context of the current conversion.
+         * @return Whether any of the nested objects has already been resolved.
+         */
+        boolean isAnyResolved(RenderContext context) {
+            boolean any = false;
+
+            for (WeakReference<?> reference : visited) {
+                Object object = reference.get();
+
+                if (object != null) {
+                    any |= context.isResolved(object);
+                }
+            }
+
+            return any;
+        }
+
+        /**
+         * Mark the nested objects resolved by the representation as resolved in a context.
+         *
+         * @param context The context of the current conversion.
+         */
+        void markResolved(RenderContext context) {
+            for (WeakReference<?> reference : resolved) {
+                Object object = reference.get();
+
+                if (object != null) {
+                    context.markResolved(object);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A cached representation and whether it has been found since it was last considered for eviction.
+     */
+    private static final class Entry {
+
+        /**
+         * The cached representation.
+         */
+        private final Fragment fragment;
+
+        /**
+         * Whether the representation has been found since it was last considered for eviction.
+         * Written without synchronization, a lost update only makes eviction slightly less accurate.
+         */
+        private boolean referenced;
+
+        /**
+         * Creates an entry that has not been found yet.
+         *
+         * @param fragment The cached representation.
+         */
+        private Entry(Fragment fragment) {
+            this.fragment = fragment;
+        }
+
+    }
+
+    /**
+     * Weak reference to a cached object, equal to any key or lookup of the same object.
+     */
+    private static final class Key extends WeakReference<Object> {
+
+        /**
+         * The identity hash code of the object, kept after the object has been garbage collected.
+         */
+        private final int hash;
+
+        /**
+         * Creates a key of an object.
+         *
+         * @param object The object to reference weakly.
+         * @param queue The queue to enqueue the key when the object has been garbage collected.
+         */
+        Key(Object object, ReferenceQueue<Object> queue) {
+            super(object, queue);
+            this.hash = System.identityHashCode(object);
+        }
+
+        /**
+         * Get the identity hash code of the object.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Check whether another key or lookup refers to the same object.
+         *
+         * @param other The key or lookup to compare with.
+         * @return Whether both refer to the same object, which has not been garbage collected.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+
+            Object object = get();
+
+            if (object == null) {
+                return false;
+            }
+
+            if (other instanceof Key key) {
+                return key.get() == object;
+            }
+
+            return other instanceof Lookup lookup && lookup.object == object;
+        }
+
+    }
+
+    /**
+     * Strong reference to an object, used to look up its key without creating a weak reference.
+     */
+    private static final class Lookup {
+
+        /**
+         * The object to look up.
+         */
+        private final Object object;
+
+        /**
+         * Creates a lookup of an object.
+         *
+         * @param object The object to look up.
+         */
+        private Lookup(Object object) {
+            this.object = object;
+        }
+
+        /**
+         * Get the identity hash code of the object.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+
+        /**
+         * Check whether a key refers to the object.
+         *
+         * @param other The key to compare with.
+         * @return Whether the key refers to the object.
+         */
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.get() == object;
+        }
+
+    }
+
+}
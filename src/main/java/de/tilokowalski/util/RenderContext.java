@@ -0,0 +1,282 @@
+package de.tilokowalski.util;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * State of a single string conversion, shared by all nested objects of the conversion.
+ * Objects are compared by identity, so {@code equals} of the rendered objects is never invoked.
+ * A context is confined to the thread performing the conversion, but may be cleared and reused by later conversions.
+ * Chunks of a container written in parallel and objects written to a cache use contexts forked from it, which record every object they come across.
+ */
+final class RenderContext {
+
+    /**
+     * Placeholder value of the identity maps, which are used as sets.
+     */
+    private static final Object PRESENT = Boolean.TRUE;
+
+    /**
+     * Maximum number of resolved objects whose map is cleared for reuse, larger maps are replaced to release their memory.
+     */
+    private static final int RETAINED_SIZE = 1024;
+
+    /**
+     * Objects whose fields have already been resolved during the conversion, with their identifier if identified.
+     */
+    private Map<Object, Object> resolved = new IdentityHashMap<>();
+
+    /**
+     * Collections, maps and arrays whose elements are currently being resolved.
+     */
+    private final Map<Object, Object> resolving = new IdentityHashMap<>();
+
+    /**
+     * The last identifier given to an object during the conversion.
+     */
+    private int lastId;
+
+    /**
+     * The context this context has been forked from, which is not modified while this context is in use, {@code null} if not forked.
+     */
+    private final RenderContext parent;
+
+    /**
+     * All objects checked during the conversion with a forked context, {@code null} if not forked.
+     */
+    private final Map<Object, Object> visited;
+
+    /**
+     * Whether any object checked with this context was known to the context it has been forked from,
+     * so the conversion with this context depends on the objects written before.
+     */
+    @Getter
+    private boolean inherited;
+
+    /**
+     * Creates an empty context.
+     */
+    RenderContext() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty context seeing all objects of another context.
+     *
+     * @param parent The context to see the objects of, {@code null} for none.
+     */
+    private RenderContext(RenderContext parent) {
+        this.parent = parent;
+        this.visited = parent == null ? null : new IdentityHashMap<>();
+    }
+
+    /**
+     * Check whether an object has already been resolved during the conversion.
+     *
+     * @param object The object to check.
+     * @return Whether the object has already been resolved.
+     */
+    boolean isResolved(Object object) {
+        if (visited != null) {
+            visited.put(object, PRESENT);
+        }
+
+        return contains(object);
+    }
+
+    /**
+     * Check whether an object has been resolved or is being resolved in this context or the context it has been forked from.
+     *
+     * @param object The object to check.
+     * @return Whether the object is known.
+     */
+    private boolean contains(Object object) {
+        if (resolved.containsKey(object) || resolving.containsKey(object)) {
+            return true;
+        }
+
+        if (parent != null && parent.isKnown(object)) {
+            inherited = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether an object is known to this context or the context it has been forked from, without modifying any of them.
+     *
+     * @param object The object to check.
+     * @return Whether the object is known.
+     */
+    private boolean isKnown(Object object) {
+        return resolved.containsKey(object) || resolving.containsKey(object) || (parent != null && parent.isKnown(object));
+    }
+
+    /**
+     * Mark an object as resolved, so it is not resolved again during the conversion.
+     *
+     * @param object The object whose fields are being resolved.
+     */
+    void markResolved(Object object) {
+        resolved.put(object, PRESENT);
+    }
+
+    /**
+     * Mark an object as resolved and give it the next identifier, so later references can be written as back-references.
+     *
+     * @param object The object whose fields are being resolved.
+     * @return The identifier of the object, starting at {@code 1} for each conversion.
+     */
+    int markIdentified(Object object) {
+        int id = ++lastId;
+        resolved.put(object, id);
+        return id;
+    }
+
+    /**
+     * Get the identifier of an object resolved during the conversion.
+     *
+     * @param object The object whose identifier to get.
+     * @return The identifier of the object, or {@code 0} if it has not been identified.
+     */
+    int getId(Object object) {
+        return resolved.get(object) instanceof Integer id ? id : 0;
+    }
+
+    /**
+     * Check whether an object or container is currently being resolved, i.e. it is an ancestor of the object currently written.
+     *
+     * @param object The object to check.
+     * @return Whether the object is being resolved.
+     */
+    boolean isResolving(Object object) {
+        return resolving.containsKey(object);
+    }
+
+    /**
+     * Check whether an object has been marked as resolved in this context, not considering the context it has been forked from.
+     *
+     * @param object The object to check.
+     * @return Whether the object has been marked as resolved.
+     */
+    boolean isMarkedResolved(Object object) {
+        return resolved.containsKey(object);
+    }
+
+    /**
+     * Mark a collection, map or array as currently being resolved, so it is not resolved again within its own elements.
+     * Also used for objects while their fields are being resolved, when back-references are written.
+     *
+     * @param container The container whose elements are being resolved.
+     */
+    void enterContainer(Object container) {
+        resolving.put(container, PRESENT);
+    }
+
+    /**
+     * Mark a collection, map or array as completely resolved, so it may be resolved again elsewhere.
+     *
+     * @param container The container whose elements have been resolved.
+     */
+    void exitContainer(Object container) {
+        resolving.remove(container);
+    }
+
+    /**
+     * Forget all objects of the last conversion, so the context can be reused.
+     */
+    void clear() {
+        if (resolved.size() > RETAINED_SIZE) {
+            resolved = new IdentityHashMap<>();
+        } else {
+            resolved.clear();
+        }
+
+        resolving.clear();
+        inherited = false;
+        lastId = 0;
+    }
+
+    /**
+     * Fork a context for a chunk of a container written in parallel.
+     * This context must not be modified until the forked context has been joined.
+     *
+     * @return A context seeing all objects of this context.
+     */
+    RenderContext fork() {
+        return new RenderContext(this);
+    }
+
+    /**
+     * Add the objects resolved and checked with a forked context to this context.
+     *
+     * @param forked The forked context, not to be used anymore.
+     */
+    void join(RenderContext forked) {
+        resolved.putAll(forked.resolved);
+        inherited |= forked.inherited;
+
+        if (visited != null) {
+            visited.putAll(forked.visited);
+        }
+    }
+
+    /**
+     * Get all objects checked with this forked context.
+     *
+     * @param except An object to leave out.
+     * @return The checked objects.
+     */
+    Object[] getVisited(Object except) {
+        return without(visited, except);
+    }
+
+    /**
+     * Get all objects resolved with this context, not considering the context it has been forked from.
+     *
+     * @param except An object to leave out.
+     * @return The resolved objects.
+     */
+    Object[] getResolved(Object except) {
+        return without(resolved, except);
+    }
+
+    /**
+     * Check whether any object checked with this forked context has been resolved in another context.
+     *
+     * @param other The context to compare with.
+     * @return Whether the contexts have any object in common.
+     */
+    boolean hasVisitedAny(RenderContext other) {
+        for (Object object : visited.keySet()) {
+            if (other.resolved.containsKey(object)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the objects of an identity set, leaving out a certain object.
+     *
+     * @param objects The identity set.
+     * @param except The object to leave out.
+     * @return The remaining objects.
+     */
+    private static Object[] without(Map<Object, Object> objects, Object except) {
+        Object[] result = new Object[objects.size() - (objects.containsKey(except) ? 1 : 0)];
+        int index = 0;
+
+        for (Object object : objects.keySet()) {
+            if (object != except) {
+                result[index++] = object;
+            }
+        }
+
+        return result;
+    }
+
+}
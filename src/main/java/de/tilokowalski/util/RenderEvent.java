@@ -0,0 +1,63 @@
+package de.tilokowalski.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event of a single conversion by a renderer, including the converted object graph but not nested conversions.
+ * Like any JFR event it is disabled unless a recording enables {@value #NAME}, and it records the stack trace of the caller,
+ * so a recording shows both the classes and the call sites that are expensive to convert.
+ * Initializing this class registers the event with the flight recorder, so it is only used once the flight recorder has been
+ * initialized, and only created for conversions while a recording enables it.
+ */
+@Name(RenderEvent.NAME)
+@Label("String Representation")
+@Category("ToString")
+@Description("Conversion of an object graph to its string representation")
+final class RenderEvent extends Event {
+
+    /**
+     * Name of the event, used to enable it in recordings.
+     */
+    static final String NAME = "de.tilokowalski.util.Render";
+
+    /**
+     * The class of the converted object, {@code null} if the object is {@code null}.
+     */
+    @Label("Root Class")
+    Class<?> rootClass;
+
+    /**
+     * Number of characters written.
+     */
+    @Label("Output Length")
+    long outputLength;
+
+    /**
+     * Number of objects and containers visited.
+     */
+    @Label("Nodes")
+    int nodes;
+
+    /**
+     * Maximum depth of nested objects reached below the converted object.
+     */
+    @Label("Max Depth")
+    int maxDepth;
+
+    /**
+     * Whether any part of the object graph has been omitted because of the budget.
+     */
+    @Label("Truncated")
+    boolean truncated;
+
+    /**
+     * Number of objects that could not be converted, including the converted object itself.
+     */
+    @Label("Errors")
+    int errors;
+
+}
@@ -0,0 +1,203 @@
+package de.tilokowalski.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of the state needed to convert objects with a certain renderer, so steady-state conversions allocate nothing.
+ * States are not bound to threads: any thread takes a state out of a slot chosen by its identity and puts it back afterwards,
+ * so the pool stays small for any number of threads, including virtual threads, and never keeps states of terminated threads.
+ * Without a free state in its slots, a thread simply creates a new one.
+ */
+final class RenderPool {
+
+    /**
+     * Number of slots probed by a thread when taking or returning a state.
+     */
+    private static final int PROBES = 2;
+
+    /**
+     * Maximum capacity of the buffer of a state to be returned to the pool, larger states are dropped to release their memory.
+     */
+    private static final int RETAINED_CAPACITY = 1 << 16;
+
+    /**
+     * Maximum number of frames of a state to be returned to the pool.
+     */
+    private static final int RETAINED_FRAMES = 1024;
+
+    /**
+     * The renderer whose conversions use the pooled states.
+     */
+    private final ToStringRenderer renderer;
+
+    /**
+     * The slots holding free states, or {@code null} if taken.
+     */
+    private final AtomicReferenceArray<State> slots;
+
+    /**
+     * Mask to map a hash to a slot, the number of slots being a power of two.
+     */
+    private final int mask;
+
+    /**
+     * Creates an empty pool with two slots per available processor.
+     *
+     * @param renderer The renderer whose conversions use the pooled states.
+     */
+    RenderPool(ToStringRenderer renderer) {
+        int size = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1);
+
+        this.renderer = renderer;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Take a free state out of the pool, or create a new one if there is none.
+     *
+     * @return A state confined to the calling thread until it is released.
+     */
+    State acquire() {
+        int start = System.identityHashCode(Thread.currentThread());
+
+        for (int i = 0; i < PROBES; i++) {
+            State state = slots.getAndSet((start + i) & mask, null);
+
+            if (state != null) {
+                return state;
+            }
+        }
+
+        return new State(renderer);
+    }
+
+    /**
+     * Return a state to the pool, unless it has grown too large or the probed slots are occupied.
+     *
+     * @param state The state to return, which must not be used by the calling thread anymore.
+     */
+    void release(State state) {
+        if (state.buffer.capacity() > RETAINED_CAPACITY || state.traversal.getFrameCapacity() > RETAINED_FRAMES) {
+            return;
+        }
+
+        int start = System.identityHashCode(Thread.currentThread());
+
+        for (int i = 0; i < PROBES; i++) {
+            if (slots.compareAndSet((start + i) & mask, null, state)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Everything a single conversion needs: the traversal with its frames, the context and a buffer.
+     */
+    static final class State {
+
+        /**
+         * Size of the chunks in which the buffer is copied to character buffers.
+         */
+        private static final int CHUNK_SIZE = 512;
+
+        /**
+         * The buffer conversions to strings are written to.
+         */
+        private final StringBuilder buffer = new StringBuilder(256);
+
+        /**
+         * The sink of the traversal, pointing to the buffer or a target of the caller.
+         */
+        private final RenderSink.StringBuilderSink sink = new RenderSink.StringBuilderSink(buffer);
+
+        /**
+         * The context of the conversion, cleared after each conversion.
+         */
+        private final RenderContext context = new RenderContext();
+
+        /**
+         * The traversal writing to the sink.
+         */
+        private final Traversal traversal;
+
+        /**
+         * Chunk used to copy the buffer to character buffers, created on first use.
+         */
+        private char[] chunk;
+
+        /**
+         * Creates the state for conversions of a renderer.
+         *
+         * @param renderer The renderer whose conversions use the state.
+         */
+        State(ToStringRenderer renderer) {
+            this.traversal = new Traversal(sink, context, renderer);
+        }
+
+        /**
+         * Write a string representation of an object to the buffer of this state, replacing its previous content.
+         *
+         * @param object The object to be represented as a string.
+         * @param nesting The depth of the object, used for indentation.
+         * @return The buffer holding the string representation.
+         * @throws Exception When the object can not be converted.
+         */
+        StringBuilder render(Object object, int nesting) throws Exception {
+            buffer.setLength(0);
+            render(buffer, object, nesting);
+            return buffer;
+        }
+
+        /**
+         * Write a string representation of an object directly to a StringBuilder.
+         *
+         * @param target The StringBuilder to append to.
+         * @param object The object to be represented as a string.
+         * @param nesting The depth of the object, used for indentation.
+         * @throws Exception When the object can not be converted.
+         */
+        void render(StringBuilder target, Object object, int nesting) throws Exception {
+            sink.setStringBuilder(target);
+
+            try {
+                traversal.render(object, nesting);
+            } finally {
+                sink.setStringBuilder(buffer);
+                context.clear();
+            }
+        }
+
+        /**
+         * Write a string representation of an object to a character buffer.
+         * The representation is created in the buffer of this state first, so nothing is written if it does not fit.
+         *
+         * @param target The character buffer to write to.
+         * @param object The object to be represented as a string.
+         * @param nesting The depth of the object, used for indentation.
+         * @throws Exception When the object can not be converted.
+         */
+        void render(CharBuffer target, Object object, int nesting) throws Exception {
+            render(object, nesting);
+
+            if (buffer.length() > target.remaining()) {
+                throw new BufferOverflowException();
+            }
+
+            if (chunk == null) {
+                chunk = new char[CHUNK_SIZE];
+            }
+
+            for (int start = 0; start < buffer.length(); start += CHUNK_SIZE) {
+                int end = Math.min(start + CHUNK_SIZE, buffer.length());
+
+                buffer.getChars(start, end, chunk, 0);
+                target.put(chunk, 0, end - start);
+            }
+        }
+
+    }
+
+}
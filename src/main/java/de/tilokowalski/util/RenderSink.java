@@ -0,0 +1,999 @@
+package de.tilokowalski.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Target the string representation is written to while the object graph is traversed.
+ * Primitive values are appended without boxing them or creating intermediate strings.
+ * Failures of the underlying target are passed on as {@link UncheckedIOException}, a full target buffer as {@link BufferOverflowException}.
+ */
+abstract class RenderSink {
+
+    /**
+     * Append a single character.
+     *
+     * @param c The character to append.
+     */
+    abstract void append(char c);
+
+    /**
+     * Append a string.
+     *
+     * @param s The string to append.
+     */
+    abstract void append(String s);
+
+    /**
+     * Append a part of a character sequence.
+     *
+     * @param s The character sequence to append a part of.
+     * @param start The index of the first character to append.
+     * @param end The index after the last character to append.
+     */
+    abstract void append(CharSequence s, int start, int end);
+
+    /**
+     * Append the decimal representation of an {@code int} value.
+     *
+     * @param value The value to append.
+     */
+    abstract void append(int value);
+
+    /**
+     * Append the decimal representation of a {@code long} value.
+     *
+     * @param value The value to append.
+     */
+    abstract void append(long value);
+
+    /**
+     * Append the representation of a {@code double} value, as created by {@link Double#toString(double)}.
+     *
+     * @param value The value to append.
+     */
+    abstract void append(double value);
+
+    /**
+     * Append the representation of a {@code float} value, as created by {@link Float#toString(float)}.
+     *
+     * @param value The value to append.
+     */
+    abstract void append(float value);
+
+    /**
+     * Append the representation of a {@code boolean} value.
+     *
+     * @param value The value to append.
+     */
+    void append(boolean value) {
+        append(value ? "true" : "false");
+    }
+
+    /**
+     * Append a value formatted by a formatter.
+     *
+     * @param formatter The formatter of the value.
+     * @param value The value to append.
+     */
+    abstract void append(ToStringFormatter<Object> formatter, Object value);
+
+    /**
+     * Create a sink appending to a StringBuilder.
+     *
+     * @param stringBuilder The StringBuilder to append to.
+     * @return The sink.
+     */
+    static RenderSink of(StringBuilder stringBuilder) {
+        return new StringBuilderSink(stringBuilder);
+    }
+
+    /**
+     * Create a sink appending to any appendable target, like a {@link java.io.Writer}.
+     *
+     * @param appendable The target to append to.
+     * @return The sink.
+     */
+    static RenderSink of(Appendable appendable) {
+        if (appendable instanceof StringBuilder stringBuilder) {
+            return new StringBuilderSink(stringBuilder);
+        }
+
+        return new AppendableSink(appendable);
+    }
+
+    /**
+     * Create a sink encoding to UTF-8 directly into a byte buffer, like a region of a memory-mapped file.
+     *
+     * @param byteBuffer The byte buffer to write to, from its current position.
+     * @return The sink, throwing {@link BufferOverflowException} when the byte buffer is full.
+     */
+    static Utf8Sink of(ByteBuffer byteBuffer) {
+        return new Utf8Sink(byteBuffer, null, null);
+    }
+
+    /**
+     * Create a sink encoding to UTF-8 into a buffer which is written to an output stream whenever it is full.
+     *
+     * @param outputStream The stream to write to.
+     * @param size The size of the buffer.
+     * @return The sink.
+     */
+    static Utf8Sink of(OutputStream outputStream, int size) {
+        return new Utf8Sink(ByteBuffer.allocate(size), outputStream, null);
+    }
+
+    /**
+     * Create a sink encoding to UTF-8 into a direct buffer which is written to a channel whenever it is full.
+     *
+     * @param channel The channel to write to, like a {@link java.nio.channels.FileChannel}.
+     * @param size The size of the buffer.
+     * @return The sink.
+     */
+    static Utf8Sink of(WritableByteChannel channel, int size) {
+        return new Utf8Sink(ByteBuffer.allocateDirect(size), null, channel);
+    }
+
+    /**
+     * Create a sink passing at most a given number of characters on to another sink.
+     * Once the limit is reached, any further content cuts off the output and stops the conversion
+     * by throwing {@link BudgetExhaustedException}.
+     *
+     * @param sink The sink to pass the characters on to.
+     * @param maxLength The maximum number of characters to pass on.
+     * @return The sink.
+     */
+    static RenderSink limit(RenderSink sink, int maxLength) {
+        return new LimitedSink(sink, maxLength);
+    }
+
+    /**
+     * Create a sink counting the characters passed on to another sink.
+     *
+     * @param sink The sink to pass the characters on to.
+     * @return The sink.
+     */
+    static CountingSink count(RenderSink sink) {
+        return new CountingSink(sink);
+    }
+
+    /**
+     * Create a sink passing all characters on to another sink and copying them into a StringBuilder.
+     *
+     * @param sink The sink to pass the characters on to.
+     * @param copy The StringBuilder to copy the characters into.
+     * @return The sink.
+     */
+    static RenderSink copy(RenderSink sink, StringBuilder copy) {
+        return new CopyingSink(sink, copy);
+    }
+
+    /**
+     * Prepare the sink for another conversion.
+     */
+    void reset() {
+        /* NOTHING TO RESET */
+    }
+
+    /**
+     * Sink appending directly to a StringBuilder, which can be replaced between conversions.
+     */
+    static final class StringBuilderSink extends RenderSink {
+
+        /**
+         * The StringBuilder to append to.
+         */
+        private StringBuilder stringBuilder;
+
+        /**
+         * Creates a sink appending to a StringBuilder.
+         *
+         * @param stringBuilder The StringBuilder to append to.
+         */
+        StringBuilderSink(StringBuilder stringBuilder) {
+            this.stringBuilder = stringBuilder;
+        }
+
+        /**
+         * Replace the StringBuilder to append to.
+         *
+         * @param stringBuilder The StringBuilder to append to from now on.
+         */
+        void setStringBuilder(StringBuilder stringBuilder) {
+            this.stringBuilder = stringBuilder;
+        }
+
+        @Override
+        void append(char c) {
+            stringBuilder.append(c);
+        }
+
+        @Override
+        void append(String s) {
+            stringBuilder.append(s);
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            stringBuilder.append(s, start, end);
+        }
+
+        @Override
+        void append(int value) {
+            stringBuilder.append(value);
+        }
+
+        @Override
+        void append(long value) {
+            stringBuilder.append(value);
+        }
+
+        @Override
+        void append(double value) {
+            stringBuilder.append(value);
+        }
+
+        @Override
+        void append(float value) {
+            stringBuilder.append(value);
+        }
+
+        @Override
+        void append(boolean value) {
+            stringBuilder.append(value);
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            formatter.format(value, stringBuilder);
+        }
+
+    }
+
+    /**
+     * Sink appending to any appendable target.
+     * Primitive values are formatted into a reused buffer before they are appended.
+     */
+    private static final class AppendableSink extends RenderSink {
+
+        /**
+         * The target to append to.
+         */
+        private final Appendable appendable;
+
+        /**
+         * Buffer reused to format primitive and formatted values.
+         */
+        private final StringBuilder buffer = new StringBuilder(24);
+
+        /**
+         * Creates a sink appending to any appendable target.
+         *
+         * @param appendable The target to append to.
+         */
+        private AppendableSink(Appendable appendable) {
+            this.appendable = appendable;
+        }
+
+        @Override
+        void append(char c) {
+            try {
+                appendable.append(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void append(String s) {
+            try {
+                appendable.append(s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            try {
+                appendable.append(s, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void append(int value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            appendBuffer();
+        }
+
+        @Override
+        void append(long value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            appendBuffer();
+        }
+
+        @Override
+        void append(double value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            appendBuffer();
+        }
+
+        @Override
+        void append(float value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            appendBuffer();
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            buffer.setLength(0);
+            formatter.format(value, buffer);
+            appendBuffer();
+        }
+
+        /**
+         * Append the content of the buffer to the target.
+         */
+        private void appendBuffer() {
+            try {
+                appendable.append(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Sink passing at most a given number of characters on to another sink.
+     * Primitive values are formatted into a reused buffer to measure them, but passed on unformatted if they fit.
+     */
+    private static final class LimitedSink extends RenderSink {
+
+        /**
+         * The sink to pass the characters on to.
+         */
+        private final RenderSink sink;
+
+        /**
+         * Buffer reused to measure primitive and formatted values.
+         */
+        private final StringBuilder buffer = new StringBuilder(24);
+
+        /**
+         * The maximum number of characters to pass on.
+         */
+        private final int maxLength;
+
+        /**
+         * Number of characters that may still be passed on.
+         */
+        private int remaining;
+
+        /**
+         * Creates a sink passing at most a given number of characters on to another sink.
+         *
+         * @param sink The sink to pass the characters on to.
+         * @param maxLength The maximum number of characters to pass on.
+         */
+        private LimitedSink(RenderSink sink, int maxLength) {
+            this.sink = sink;
+            this.maxLength = Math.max(maxLength, 0);
+            this.remaining = this.maxLength;
+        }
+
+        @Override
+        void reset() {
+            remaining = maxLength;
+            sink.reset();
+        }
+
+        @Override
+        void append(char c) {
+            if (remaining == 0) {
+                throw BudgetExhaustedException.INSTANCE;
+            }
+
+            remaining--;
+            sink.append(c);
+        }
+
+        @Override
+        void append(String s) {
+            if (s.length() <= remaining) {
+                remaining -= s.length();
+                sink.append(s);
+                return;
+            }
+
+            cutOff(s);
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            if (end - start <= remaining) {
+                remaining -= end - start;
+                sink.append(s, start, end);
+                return;
+            }
+
+            cutOff(s.subSequence(start, end));
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            buffer.setLength(0);
+            formatter.format(value, buffer);
+            append(buffer, 0, buffer.length());
+        }
+
+        @Override
+        void append(int value) {
+            buffer.setLength(0);
+            buffer.append(value);
+
+            if (buffer.length() <= remaining) {
+                remaining -= buffer.length();
+                sink.append(value);
+                return;
+            }
+
+            cutOff(buffer);
+        }
+
+        @Override
+        void append(long value) {
+            buffer.setLength(0);
+            buffer.append(value);
+
+            if (buffer.length() <= remaining) {
+                remaining -= buffer.length();
+                sink.append(value);
+                return;
+            }
+
+            cutOff(buffer);
+        }
+
+        @Override
+        void append(double value) {
+            buffer.setLength(0);
+            buffer.append(value);
+
+            if (buffer.length() <= remaining) {
+                remaining -= buffer.length();
+                sink.append(value);
+                return;
+            }
+
+            cutOff(buffer);
+        }
+
+        @Override
+        void append(float value) {
+            buffer.setLength(0);
+            buffer.append(value);
+
+            if (buffer.length() <= remaining) {
+                remaining -= buffer.length();
+                sink.append(value);
+                return;
+            }
+
+            cutOff(buffer);
+        }
+
+        /**
+         * Pass on as many characters of a value as the limit allows and stop the conversion.
+         *
+         * @param value The value exceeding the limit.
+         */
+        private void cutOff(CharSequence value) {
+            if (remaining > 0) {
+                sink.append(value, 0, remaining);
+                remaining = 0;
+            }
+
+            throw BudgetExhaustedException.INSTANCE;
+        }
+
+    }
+
+    /**
+     * Sink counting the characters passed on to another sink, used only for conversions that are measured.
+     * Primitive and formatted values are formatted into a reused buffer to count them.
+     */
+    static final class CountingSink extends RenderSink {
+
+        /**
+         * The sink to pass the characters on to.
+         */
+        private final RenderSink sink;
+
+        /**
+         * Buffer reused to count primitive and formatted values.
+         */
+        private final StringBuilder buffer = new StringBuilder(24);
+
+        /**
+         * Number of characters passed on so far.
+         */
+        private long count;
+
+        /**
+         * Creates a sink counting the characters passed on to another sink.
+         *
+         * @param sink The sink to pass the characters on to.
+         */
+        private CountingSink(RenderSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Get the number of characters passed on so far.
+         *
+         * @return The number of characters.
+         */
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        void reset() {
+            sink.reset();
+        }
+
+        @Override
+        void append(char c) {
+            sink.append(c);
+            count++;
+        }
+
+        @Override
+        void append(String s) {
+            sink.append(s);
+            count += s.length();
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            sink.append(s, start, end);
+            count += end - start;
+        }
+
+        @Override
+        void append(int value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            sink.append(value);
+            count += buffer.length();
+        }
+
+        @Override
+        void append(long value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            sink.append(value);
+            count += buffer.length();
+        }
+
+        @Override
+        void append(double value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            sink.append(value);
+            count += buffer.length();
+        }
+
+        @Override
+        void append(float value) {
+            buffer.setLength(0);
+            buffer.append(value);
+            sink.append(value);
+            count += buffer.length();
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            buffer.setLength(0);
+            formatter.format(value, buffer);
+            sink.append(buffer, 0, buffer.length());
+            count += buffer.length();
+        }
+
+    }
+
+    /**
+     * Sink passing the characters on to another sink and copying them into a StringBuilder, used to capture cached representations.
+     * Primitive and formatted values are formatted into the copy first and passed on from there, so they are formatted only once.
+     */
+    private static final class CopyingSink extends RenderSink {
+
+        /**
+         * The sink to pass the characters on to.
+         */
+        private final RenderSink sink;
+
+        /**
+         * The StringBuilder to copy the characters into.
+         */
+        private final StringBuilder copy;
+
+        /**
+         * Creates a sink passing the characters on to another sink and copying them.
+         *
+         * @param sink The sink to pass the characters on to.
+         * @param copy The StringBuilder to copy the characters into.
+         */
+        private CopyingSink(RenderSink sink, StringBuilder copy) {
+            this.sink = sink;
+            this.copy = copy;
+        }
+
+        @Override
+        void reset() {
+            sink.reset();
+        }
+
+        @Override
+        void append(char c) {
+            sink.append(c);
+            copy.append(c);
+        }
+
+        @Override
+        void append(String s) {
+            sink.append(s);
+            copy.append(s);
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            sink.append(s, start, end);
+            copy.append(s, start, end);
+        }
+
+        @Override
+        void append(int value) {
+            int start = copy.length();
+            copy.append(value);
+            sink.append(copy, start, copy.length());
+        }
+
+        @Override
+        void append(long value) {
+            int start = copy.length();
+            copy.append(value);
+            sink.append(copy, start, copy.length());
+        }
+
+        @Override
+        void append(double value) {
+            int start = copy.length();
+            copy.append(value);
+            sink.append(copy, start, copy.length());
+        }
+
+        @Override
+        void append(float value) {
+            int start = copy.length();
+            copy.append(value);
+            sink.append(copy, start, copy.length());
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            int start = copy.length();
+            formatter.format(value, copy);
+            sink.append(copy, start, copy.length());
+        }
+
+    }
+
+    /**
+     * Sink encoding characters to UTF-8 directly into a byte buffer, without creating strings or character arrays.
+     * Runs of ASCII characters, which make up nearly all field names and most values, are copied byte by byte,
+     * other characters of Latin-1 and the Basic Multilingual Plane are encoded in place, surrogate pairs are combined.
+     * Unpaired surrogates are replaced by {@code '?'}, like {@link java.io.OutputStreamWriter} does.
+     * If the sink has a stream or channel, the buffer is written to it whenever it is full, so any amount of output
+     * is written with a buffer of constant size. Otherwise the buffer is the target itself and overflows when full.
+     */
+    static final class Utf8Sink extends RenderSink {
+
+        /**
+         * The replacement of unpaired surrogates.
+         */
+        private static final byte REPLACEMENT = '?';
+
+        /**
+         * The buffer the encoded bytes are written to.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The stream the buffer is written to when full, {@code null} if none.
+         */
+        private final OutputStream outputStream;
+
+        /**
+         * The channel the buffer is written to when full, {@code null} if none.
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * Buffer reused for the digits of integral values.
+         */
+        private final byte[] digits = new byte[20];
+
+        /**
+         * Buffer reused for formatted values, created on first use.
+         */
+        private StringBuilder formatted;
+
+        /**
+         * High surrogate whose low surrogate is still to be appended, {@code 0} if none.
+         */
+        private char highSurrogate;
+
+        /**
+         * Creates a sink encoding to UTF-8.
+         *
+         * @param buffer The buffer the encoded bytes are written to.
+         * @param outputStream The stream the buffer is written to when full, {@code null} if none.
+         * @param channel The channel the buffer is written to when full, {@code null} if none.
+         */
+        private Utf8Sink(ByteBuffer buffer, OutputStream outputStream, WritableByteChannel channel) {
+            this.buffer = buffer;
+            this.outputStream = outputStream;
+            this.channel = channel;
+        }
+
+        @Override
+        void append(char c) {
+            ensure(getEncodedLength(c));
+            encode(c);
+        }
+
+        @Override
+        void append(String s) {
+            append(s, 0, s.length());
+        }
+
+        @Override
+        void append(CharSequence s, int start, int end) {
+            int i = start;
+
+            while (i < end) {
+                if (highSurrogate == 0) {
+                    int limit = Math.min(end, i + buffer.remaining());
+                    char c;
+
+                    while (i < limit && (c = s.charAt(i)) < 0x80) {
+                        buffer.put((byte) c);
+                        i++;
+                    }
+
+                    if (i == end) {
+                        return;
+                    }
+                }
+
+                char c = s.charAt(i++);
+
+                ensure(getEncodedLength(c));
+                encode(c);
+            }
+        }
+
+        @Override
+        void append(int value) {
+            if (value == Integer.MIN_VALUE) {
+                append((long) value);
+                return;
+            }
+
+            int index = digits.length;
+            int remainder = Math.abs(value);
+
+            do {
+                digits[--index] = (byte) ('0' + remainder % 10);
+                remainder /= 10;
+            } while (remainder != 0);
+
+            appendDigits(index, value < 0);
+        }
+
+        @Override
+        void append(long value) {
+            if (value == Long.MIN_VALUE) {
+                append(Long.toString(value));
+                return;
+            }
+
+            int index = digits.length;
+            long remainder = Math.abs(value);
+
+            do {
+                digits[--index] = (byte) ('0' + remainder % 10);
+                remainder /= 10;
+            } while (remainder != 0);
+
+            appendDigits(index, value < 0);
+        }
+
+        @Override
+        void append(double value) {
+            append(Double.toString(value));
+        }
+
+        @Override
+        void append(float value) {
+            append(Float.toString(value));
+        }
+
+        @Override
+        void append(ToStringFormatter<Object> formatter, Object value) {
+            if (formatted == null) {
+                formatted = new StringBuilder(24);
+            }
+
+            formatted.setLength(0);
+            formatter.format(value, formatted);
+            append(formatted, 0, formatted.length());
+        }
+
+        /**
+         * Finish the output, replacing a trailing unpaired surrogate and writing the buffer to the stream or channel if any.
+         */
+        void finish() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                ensure(1);
+                buffer.put(REPLACEMENT);
+            }
+
+            if (outputStream != null || channel != null) {
+                drain();
+            }
+        }
+
+        /**
+         * Append the digits of an integral value from the digit buffer.
+         *
+         * @param index The index of the first digit.
+         * @param negative Whether the value is negative.
+         */
+        private void appendDigits(int index, boolean negative) {
+            ensure(digits.length - index + (negative ? 1 : 0) + (highSurrogate != 0 ? 1 : 0));
+
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                buffer.put(REPLACEMENT);
+            }
+
+            if (negative) {
+                buffer.put((byte) '-');
+            }
+
+            buffer.put(digits, index, digits.length - index);
+        }
+
+        /**
+         * Get the number of bytes written when encoding a character, including the replacement of a preceding unpaired surrogate.
+         *
+         * @param c The character to encode.
+         * @return The number of bytes, {@code 0} for a high surrogate waiting for its low surrogate.
+         */
+        private int getEncodedLength(char c) {
+            if (highSurrogate != 0 && Character.isLowSurrogate(c)) {
+                return 4;
+            }
+
+            int length;
+
+            if (c < 0x80) {
+                length = 1;
+            } else if (c < 0x800) {
+                length = 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length = 0;
+            } else if (Character.isLowSurrogate(c)) {
+                length = 1;
+            } else {
+                length = 3;
+            }
+
+            return highSurrogate != 0 ? length + 1 : length;
+        }
+
+        /**
+         * Encode a single character, for which {@link #getEncodedLength(char)} bytes must be remaining in the buffer.
+         *
+         * @param c The character to encode.
+         */
+        private void encode(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+
+                    buffer.put((byte) (0xF0 | codePoint >> 18));
+                    buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                    buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                    buffer.put((byte) (0x80 | codePoint & 0x3F));
+                    return;
+                }
+
+                buffer.put(REPLACEMENT);
+            }
+
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buffer.put(REPLACEMENT);
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+
+        /**
+         * Make sure a number of bytes is remaining in the buffer, writing it to the stream or channel if necessary.
+         *
+         * @param bytes The number of bytes needed.
+         * @throws BufferOverflowException When the buffer is the target itself and does not have enough bytes remaining.
+         */
+        private void ensure(int bytes) {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+
+            if (outputStream == null && channel == null) {
+                throw new BufferOverflowException();
+            }
+
+            drain();
+        }
+
+        /**
+         * Write the content of the buffer to the stream or channel and clear it.
+         */
+        private void drain() {
+            buffer.flip();
+
+            try {
+                if (outputStream != null) {
+                    outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+                } else {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                buffer.clear();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package de.tilokowalski.util;
+
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link ToStringTemplate templates} available for classes.
+ * Templates registered as service are discovered once, on first lookup.
+ */
+final class TemplateRegistry {
+
+    /**
+     * The registered templates by the class they describe.
+     */
+    private static final Map<Class<?>, ToStringTemplate<?>> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the templates registered as service have already been discovered.
+     */
+    private static volatile boolean discovered;
+
+    /**
+     * Prevents instantiation of this static registry.
+     */
+    private TemplateRegistry() {
+    }
+
+    /**
+     * Find the template of a given class.
+     *
+     * @param type The class to find the template for.
+     * @return The template of the class, or {@code null} if there is none.
+     */
+    static ToStringTemplate<?> find(Class<?> type) {
+        if (!discovered) {
+            discover();
+        }
+
+        return TEMPLATES.get(type);
+    }
+
+    /**
+     * Register a template, replacing any template registered before for the same class.
+     *
+     * @param template The template to register.
+     */
+    static void register(ToStringTemplate<?> template) {
+        TEMPLATES.put(template.getType(), template);
+        ClassMetadata.invalidate(template.getType());
+    }
+
+    /**
+     * Discover the templates registered as service, both visible to this library and to the context class loader.
+     */
+    private static synchronized void discover() {
+        if (discovered) {
+            return;
+        }
+
+        load(ServiceLoader.load(ToStringTemplate.class, ToStringTemplate.class.getClassLoader()));
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        if (contextClassLoader != null && contextClassLoader != ToStringTemplate.class.getClassLoader()) {
+            load(ServiceLoader.load(ToStringTemplate.class, contextClassLoader));
+        }
+
+        discovered = true;
+    }
+
+    /**
+     * Add all templates provided by a service loader, unless a template has already been registered manually.
+     *
+     * @param loader The service loader providing the templates.
+     */
+    @SuppressWarnings("rawtypes")
+    private static void load(ServiceLoader<ToStringTemplate> loader) {
+        try {
+            for (ToStringTemplate<?> template : loader) {
+                TEMPLATES.putIfAbsent(template.getType(), template);
+            }
+        } catch (ServiceConfigurationError e) {
+            e.printStackTrace();
+        }
+    }
+
+}
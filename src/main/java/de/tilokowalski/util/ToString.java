@@ -1,16 +1,10 @@
 package de.tilokowalski.util;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InaccessibleObjectException;
-import java.lang.reflect.Modifier;
-import java.text.SimpleDateFormat;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-
-import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -18,29 +12,7 @@ import lombok.Setter;
  * This class provides a utility to generate a human-readable string representation of any object.
  * It's a customizable alternative to the traditional toString() method.
  */
-@Setter
-@AllArgsConstructor(access = AccessLevel.PRIVATE)
-public class ToString {
-
-    /**
-     * Constant representing the opening parenthesis of the objects content.
-     */
-    private static final char TS_PARANTHESIS_OPEN = '[';
-
-    /**
-     * Constant representing the closing parenthesis of the objects content.
-     */
-    private static final char TS_PARANTHESIS_CLOSE = ']';
-
-    /**
-     * Constant representing the quotation mark, used to encase string values.
-     */
-    private static final char TS_PARANTHESIS_STRING = '\"';
-
-    /**
-     * Constant representing the equal sign between field name and value.
-     */
-    private static final char TS_EQUALS = '=';
+public final class ToString {
 
     /**
      * Constant representing the single line delimiter which separates fields when creating a single line string representation.
@@ -73,323 +45,309 @@ public class ToString {
     public static final String TS_EXPR_CIRC_REF = "PARENT";
 
     /**
-     * The object for which the string representation will be generated.
+     * Constant representing a back-reference to an object written before, followed by the identifier of the object.
+     * Used by renderers that deduplicate shared objects, see {@code ToStringRenderer.builder().deduplicate(true)}.
      */
-    @Getter
-    private Object object;
+    public static final String TS_EXPR_BACK_REF = "@";
 
     /**
-     * The character to be used as delimiter between fields.
+     * Constant representing content that has been omitted because the budget of the string conversion is exhausted.
      */
-    @Getter
-    private char delimiter;
+    public static final String TS_EXPR_OMITTED = "...";
 
     /**
-     * Depth of the nested object, used for indentation.
+     * Engine used to create the string representation of the fields of an object.
      */
     @Getter
-    private int nesting;
+    @Setter
+    private static volatile ToStringEngine engine = ToStringEngine.COMPILED;
 
     /**
-     * Level of class hierarchy to be explored.
+     * Format in which the content of resolved {@code byte[]} arrays is written.
      */
     @Getter
-    private int level;
+    @Setter
+    private static volatile ToStringByteFormat byteFormat = ToStringByteFormat.ELEMENTS;
 
     /**
-     * Whether to resolve nested objects or not.
+     * Prevents instantiation of this static utility.
      */
-    @Getter
-    private boolean resolve;
+    private ToString() {
+    }
 
     /**
-     * List of objects that have already been resolved during the string conversion.
+     * Formerly returned the list of objects that have already been resolved in the string conversion.
+     * Resolved objects are now tracked separately for each conversion, so this list is always empty.
+     *
+     * @return An empty list.
+     * @deprecated Resolved objects are tracked separately for each conversion.
      */
-    @Getter
-    private final static List<Object> alreadyResolved = new ArrayList<>();
+    @Deprecated(forRemoval = true)
+    public static List<Object> getAlreadyResolved() {
+        return List.of();
+    }
 
     /**
-     * Overrides the toString method to return a string representation of the object.
+     * Formerly added an object to the list of objects that have already been resolved in the string conversion.
+     * Resolved objects are now tracked separately for each conversion, so this method has no effect.
      *
-     * @return String representation of the object.
+     * @param alreadyResolved An object that has been already resolved.
+     * @deprecated Resolved objects are tracked separately for each conversion.
      */
-    @Override
-    public String toString() {
-        try {
-            return this.buildFromAttributes();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return null;
+    @Deprecated(forRemoval = true)
+    public static void addAlreadyResolved(Object alreadyResolved) {
+        /* NO EFFECT */
     }
 
     /**
-     * Private method to build string representation from object's attributes.
-     * Uses indirect recursion to implement nested objects.
+     * Registers a template to read the fields of a class without reflection.
+     * Templates generated for classes annotated with {@link ToStringGenerate} are registered automatically.
      *
-     * @return String representation of the object's attributes.
-     * @throws Exception When any error occurs while generating the string.
+     * @param template The template to register, replacing any template registered before for the same class.
      */
-    private String buildFromAttributes() throws Exception {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(getObject().getClass().getSimpleName());
-        stringBuilder.append(TS_PARANTHESIS_OPEN);
-
-        if (getNesting() == 0) {
-            getAlreadyResolved().clear();
-        }
-
-        if (!getAlreadyResolved().contains(object)) {
-            if (getObject() instanceof Collection<?> collection) {
-                appendCollection(stringBuilder, collection);
-            } else if (getObject() instanceof Map<?, ?>) {
-                Collection<?> collection = ((Map<?, ?>) getObject()).values();
-                appendCollection(stringBuilder, collection);
-            } else if (getObject().getClass().isArray()) {
-                Collection<?> collection = List.of(getObject());
-                appendCollection(stringBuilder, collection);
-            } else {
-                if (getDelimiter() == ToString.TS_DELIMITER_ML) {
-                    stringBuilder.append(getDelimiter());
-                }
-
-                boolean firstField = true;
-                for (Field field : getDeclaredFields(getObject(), getLevel())) {
-                    validateFieldAnnotations(field);
-
-                    if (getNesting() > 0 && !isResolve()) {
-                        continue;
-                    }
-
-                    if (!isFieldIncluded(field)) {
-                        continue;
-                    }
-
-                    if (!firstField) {
-                        stringBuilder.append(getDelimiter());
-                    }
-
-                    if (getDelimiter() == ToString.TS_DELIMITER_ML) {
-                        stringBuilder.append(getIndentation(getNesting()));
-                    }
-
-                    appendValue(stringBuilder, field, getObject());
-
-                    if (firstField) {
-                        firstField = false;
-                    }
-                }
-
-                if (getDelimiter() == ToString.TS_DELIMITER_ML) {
-                    stringBuilder.append(getDelimiter());
-                    stringBuilder.append(getIndentation(getNesting() - 1));
-                }
-            }
-        } else {
-            stringBuilder.append(TS_EXPR_CIRC_REF);
-        }
-
-        stringBuilder.append(TS_PARANTHESIS_CLOSE);
-        return stringBuilder.toString();
+    public static void registerTemplate(ToStringTemplate<?> template) {
+        TemplateRegistry.register(template);
     }
 
     /**
-     * Get the declared fields for a given object up to a certain level.
+     * Registers a formatter to write values of a class as a single value instead of resolving their fields.
+     * Formatters are looked up by the exact runtime class of a value and take precedence over the built-in formatters.
      *
-     * @param object The object for which to get declared fields.
-     * @param level The maximum level up to which to get fields.
-     * @return A list of Fields for the object.
+     * @param <T> The class to format.
+     * @param type The exact class to format, subclasses are not affected.
+     * @param formatter The formatter to register, replacing any formatter registered before for the same class.
      */
-    private List<Field> getDeclaredFields(Object object, int level) {
-        List<Field> result = new ArrayList<>();
-
-        Class<?> currentClass = object.getClass();
-
-        int iteration = 0;
-
-        while (currentClass != null) {
-            for (Field field : currentClass.getDeclaredFields()) {
-
-                try {
-                    field.setAccessible(true);
-
-                    if (currentClass.isArray() || Collection.class.isAssignableFrom(currentClass) || Map.class.isAssignableFrom(currentClass)) {
-                        if (!field.getName().equals("elementData")) {
-                            continue;
-                        }
-                    }
-
-                    result.add(field);
-                } catch (InaccessibleObjectException e) {
-                    /* IGNORE */
-                }
+    public static <T> void registerFormatter(Class<T> type, ToStringFormatter<? super T> formatter) {
+        FormatterRegistry.register(type, formatter);
+    }
 
-            }
+    /**
+     * Generates a string representation of an object using single line delimiter and does not resolve nested objects.
+     *
+     * @param object The object to be represented as a string.
+     * @return String representation of the object.
+     */
+    public static String create(Object object) {
+        return ToStringRenderer.DEFAULT.render(object);
+    }
 
-            currentClass = currentClass.getSuperclass();
+    /**
+     * Generates a string representation of an object using multi-line identations and resolves nested objects.
+     *
+     * @param object The object to be represented as a string.
+     * @return String representation of the object.
+     */
+    public static String createDump(Object object) {
+        return ToStringRenderer.DUMP.render(object);
+    }
 
-            if (level != TS_LEVEL_DEEP && iteration == level) {
-                break;
-            }
-            iteration++;
-        }
+    /**
+     * Generates a single line JSON document of an object, resolving nested objects.
+     * The same fields are written as by {@link #createDump(Object)}, with proper escaping, so the result can be parsed by any JSON parser.
+     *
+     * @param object The object to be written as JSON.
+     * @return JSON document of the object.
+     */
+    public static String createJson(Object object) {
+        return ToStringRenderer.JSON.render(object);
+    }
 
-        return result;
+    /**
+     * Defers the string representation of an object using single line delimiter and not resolving nested objects.
+     * The object is only converted when the handle is written for the first time, e.g. by a log statement whose level is enabled.
+     *
+     * @param object The object to be represented as a string.
+     * @return Handle converting the object on first use, also usable as {@link java.util.function.Supplier}.
+     */
+    public static ToStringHandle lazy(Object object) {
+        return ToStringRenderer.DEFAULT.lazy(object);
     }
 
     /**
-     * Check if a given field should be included in the string representation.
-     * Depends on ignore annotation and final and static modifiers but not on visibility.
+     * Defers the string representation of an object using multi-line identations and resolving nested objects.
+     * The object is only converted when the handle is written for the first time, e.g. by a log statement whose level is enabled.
      *
-     * @param field The field to check.
-     * @return Whether the field should be included in the string representation.
+     * @param object The object to be represented as a string.
+     * @return Handle converting the object on first use, also usable as {@link java.util.function.Supplier}.
      */
-    private boolean isFieldIncluded(Field field) {
-        if (Modifier.isFinal(field.getModifiers())) {
-            return false;
-        }
+    public static ToStringHandle lazyDump(Object object) {
+        return ToStringRenderer.DUMP.lazy(object);
+    }
 
-        if (Modifier.isStatic(field.getModifiers())) {
-            return false;
-        }
+    /**
+     * Generates a custom string representation of an object using specified custom parameters.
+     *
+     * @param object The object to be represented as a string.
+     * @param delimiter Tthe character to be used as delimiter.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @return String representation of the object.
+     */
+    public static String createCustom(Object object, char delimiter, int nesting, int level, boolean resolve) {
+        return ToStringRenderer.shared(delimiter, level, resolve).render(object, nesting);
+    }
 
-        return field.getAnnotation(ToStringIgnore.class) == null;
+    /**
+     * Generates a custom string representation of an object using specified custom parameters, limited by a budget.
+     * When the budget is exhausted, the remaining content is omitted and a marker is written instead.
+     *
+     * @param object The object to be represented as a string.
+     * @param delimiter The character to be used as delimiter.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param budget The limits of the string conversion.
+     * @return String representation of the object.
+     */
+    public static String createCustom(Object object, char delimiter, int nesting, int level, boolean resolve, ToStringBudget budget) {
+        return renderer(delimiter, level, resolve, budget).render(object, nesting);
     }
 
     /**
-     * Validate the annotations on a given field to detect incompabilities.
+     * Generates the differences between two states of an object graph, exploring the entire class hierarchy.
+     * Each difference is written on its own line as path of the value, followed by the value before and the value after,
+     * e.g. {@code Person.address.city: "Anytown" -> "Othertown"}. Objects are compared field by field, lists and arrays
+     * element by element, sets by their elements and maps by their keys, values of built-in or registered formatters by {@code equals}.
+     * Elements and keys missing in one of the states are written as {@code ABSENT}, fields not to be resolved only if they are written differently.
+     * Objects that are identical in both states are skipped without being visited.
      *
-     * @param field The field to validate.
-     * @throws Exception When the field has incompatible annotations.
-     */
-    private void validateFieldAnnotations(Field field) throws Exception {
-        if (field.getAnnotation(ToStringDontResolve.class) != null) {
-            if (field.getAnnotation(ToStringIgnore.class) != null) {
-                throw new Exception("annotations " + ToStringIgnore.class.getSimpleName() + " and " + ToStringDontResolve.class.getSimpleName() + " are not compatible");
-            }
-
-            if (!Collection.class.isAssignableFrom(field.getType()) && !Map.class.isAssignableFrom(field.getType()) && !field.getClass().isArray()) {
-                throw new Exception("annotation " + ToStringDontResolve.class + " is not supported for field " + field.getName() + " of type " + field.getType().getSimpleName());
-            }
-        }
+     * @param before The state before.
+     * @param after The state after.
+     * @return The differences, one per line, or an empty string if both states are equal.
+     */
+    public static String diff(Object before, Object after) {
+        return diff(before, after, TS_LEVEL_DEEP);
     }
 
     /**
-     * Append the value of a given field to the StringBuilder that is passed through.
+     * Generates the differences between two states of an object graph, exploring a certain level of class hierarchy.
      *
-     * @param result The StringBuilder to append to.
-     * @param field The field whose value to append.
-     * @param object The object from which to get the field's value.
-     */
-    private void appendValue(StringBuilder result, Field field, Object object) throws IllegalAccessException {
-        result.append(field.getName());
-        result.append(TS_EQUALS);
-
-        Object value;
-
-        value = field.get(object);
-
-        if (value == null) {
-            result.append(TS_EXPR_NULL);
-        } else if (value instanceof Enum) {
-            result.append(((Enum<?>) value).name());
-        } else if (value instanceof LocalDate date) {
-            result.append(date.format(DateTimeFormatter.ISO_LOCAL_DATE));
-        } else if (value instanceof LocalDateTime dateTime) {
-            result.append(dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        } else if (value instanceof Date) { // Legacy java.util.Date support
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-            result.append(format.format(value));
-        } else if (field.getType().isPrimitive() || value instanceof Number) {
-            result.append(value);
-        } else if (value instanceof String) {
-            result.append(TS_PARANTHESIS_STRING).append(value).append(TS_PARANTHESIS_STRING);
-        } else {
-            boolean resolve = isResolve();
-
-            if (field.isAnnotationPresent(ToStringDontResolve.class)) {
-                resolve = false;
-            }
-
-            result.append(ToString.createCustom(value, getDelimiter(), getNesting() + 1, getLevel(), resolve));
+     * @param before The state before.
+     * @param after The state after.
+     * @param level The level of class hierarchy to be explored.
+     * @return The differences, one per line, or an empty string if both states are equal, or {@code null} if they can not be compared.
+     */
+    public static String diff(Object before, Object after, int level) {
+        try {
+            return new DiffTraversal(level).diff(before, after);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
-        ToString.addAlreadyResolved(object);
+        return null;
     }
 
     /**
-     * Append the elements of a collection to the StringBuilder that is passed through.
+     * Writes a string representation of an object to an appendable target using single line delimiter and does not resolve nested objects.
      *
-     * @param result The StringBuilder to append to.
-     * @param collection The collection whose elements to append.
-     */
-    private void appendCollection(StringBuilder result, Collection<?> collection) {
-        if (collection.isEmpty() || !isResolve()) {
-            result.append(collection.size());
-        } else {
-            for (Object entry : collection) {
-                result.append(getDelimiter());
-                result.append(getIndentation(getNesting()));
-                result.append(ToString.createCustom(entry, getDelimiter(), getNesting() + 1, getLevel(), isResolve()));
-            }
-
-            result.append(getDelimiter());
-            result.append(getIndentation(getNesting() - 1));
-        }
+     * @param appendable The target to write to, like a {@link StringBuilder} or {@link Writer}.
+     * @param object The object to be represented as a string.
+     * @throws IOException When the target can not be written to.
+     */
+    public static void appendTo(Appendable appendable, Object object) throws IOException {
+        ToStringRenderer.DEFAULT.renderTo(appendable, object);
     }
 
     /**
-     * Generate a string of a certain number of indentation characters.
+     * Writes a custom string representation of an object to an appendable target using specified custom parameters.
+     * The entire object graph is written in a single pass, without creating intermediate strings for nested objects.
      *
-     * @param n The number of indentation characters to generate.
-     * @return A string of n indentation characters.
+     * @param appendable The target to write to, like a {@link StringBuilder} or {@link Writer}.
+     * @param object The object to be represented as a string.
+     * @param delimiter The character to be used as delimiter.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @throws IOException When the target can not be written to.
      */
-    private static String getIndentation(int n) {
-        return "\t".repeat(n + 1);
+    public static void appendTo(Appendable appendable, Object object, char delimiter, int nesting, int level, boolean resolve) throws IOException {
+        ToStringRenderer.shared(delimiter, level, resolve).renderTo(appendable, object, nesting);
     }
 
     /**
-     * Adds an object to the list of objects that have already been resolved in the string conversion.
+     * Writes a custom string representation of an object to an appendable target using specified custom parameters, limited by a budget.
+     * When the budget is exhausted, the remaining content is omitted and a marker is written instead.
      *
-     * @param alreadyResolved An object that has been already resolved.
+     * @param appendable The target to write to, like a {@link StringBuilder} or {@link Writer}.
+     * @param object The object to be represented as a string.
+     * @param delimiter The character to be used as delimiter.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param budget The limits of the string conversion.
+     * @throws IOException When the target can not be written to.
      */
-    public static void addAlreadyResolved(Object alreadyResolved) {
-        ToString.alreadyResolved.add(alreadyResolved);
+    public static void appendTo(Appendable appendable, Object object, char delimiter, int nesting, int level, boolean resolve, ToStringBudget budget) throws IOException {
+        renderer(delimiter, level, resolve, budget).renderTo(appendable, object, nesting);
     }
 
     /**
-     * Generates a string representation of an object using single line delimiter and does not resolve nested objects.
+     * Writes a string representation of an object to an appendable target using multi-line identations and resolves nested objects.
      *
+     * @param appendable The target to write to, like a {@link StringBuilder} or {@link Writer}.
      * @param object The object to be represented as a string.
-     * @return String representation of the object.
+     * @throws IOException When the target can not be written to.
      */
-    public static String create(Object object) {
-        return (new ToString(object, TS_DELIMITER_SL, 0, TS_LEVEL_DEEP, false)).toString();
+    public static void appendDumpTo(Appendable appendable, Object object) throws IOException {
+        ToStringRenderer.DUMP.renderTo(appendable, object);
     }
 
     /**
-     * Generates a string representation of an object using multi-line identations and resolves nested objects.
+     * Writes a string representation of an object to an output stream encoded as UTF-8, using single line delimiter and not resolving nested objects.
+     * The stream is flushed but not closed.
      *
+     * @param outputStream The stream to write to.
      * @param object The object to be represented as a string.
-     * @return String representation of the object.
+     * @throws IOException When the stream can not be written to.
      */
-    public static String createDump(Object object) {
-        return (new ToString(object, TS_DELIMITER_ML, 0, TS_LEVEL_DEEP, true).toString());
+    public static void writeTo(OutputStream outputStream, Object object) throws IOException {
+        writeTo(outputStream, object, TS_DELIMITER_SL, 0, TS_LEVEL_DEEP, false);
     }
 
     /**
-     * Generates a custom string representation of an object using specified custom parameters.
+     * Writes a custom string representation of an object to an output stream encoded as UTF-8, using specified custom parameters.
+     * The stream is flushed but not closed.
      *
+     * @param outputStream The stream to write to.
      * @param object The object to be represented as a string.
-     * @param delimiter Tthe character to be used as delimiter.
+     * @param delimiter The character to be used as delimiter.
      * @param nesting The depth of the nested object, used for indentation.
      * @param level The level of class hierarchy to be explored.
      * @param resolve Whether to resolve nested objects or not.
-     * @return String representation of the object.
+     * @throws IOException When the stream can not be written to.
      */
-    public static String createCustom(Object object, char delimiter, int nesting, int level, boolean resolve) {
-        return (new ToString(object, delimiter, nesting, level, resolve)).toString();
+    public static void writeTo(OutputStream outputStream, Object object, char delimiter, int nesting, int level, boolean resolve) throws IOException {
+        ToStringRenderer.shared(delimiter, level, resolve).writeTo(outputStream, object, nesting);
+    }
+
+    /**
+     * Writes a string representation of an object to an output stream encoded as UTF-8, using multi-line identations and resolving nested objects.
+     * The stream is flushed but not closed.
+     *
+     * @param outputStream The stream to write to.
+     * @param object The object to be represented as a string.
+     * @throws IOException When the stream can not be written to.
+     */
+    public static void writeDumpTo(OutputStream outputStream, Object object) throws IOException {
+        writeTo(outputStream, object, TS_DELIMITER_ML, 0, TS_LEVEL_DEEP, true);
+    }
+
+    /**
+     * Get the renderer for custom parameters, shared unless a budget is given.
+     *
+     * @param delimiter The character to be used as delimiter.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param budget The limits of the string conversion.
+     * @return The renderer.
+     */
+    private static ToStringRenderer renderer(char delimiter, int level, boolean resolve, ToStringBudget budget) {
+        if (budget == null || budget == ToStringBudget.UNLIMITED) {
+            return ToStringRenderer.shared(delimiter, level, resolve);
+        }
+
+        return ToStringRenderer.builder().delimiter(delimiter).level(level).resolve(resolve).budget(budget).build();
     }
 
 }
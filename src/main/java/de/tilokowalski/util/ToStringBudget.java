@@ -0,0 +1,55 @@
+package de.tilokowalski.util;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Limits the effort spent on creating a string representation.
+ * When a limit is reached, the traversal of the object graph stops right away and a compact marker is written instead,
+ * so the cost of a conversion is proportional to its budget and not to the size of the object graph.
+ * All limits are unlimited unless set.
+ */
+@Getter
+@Builder
+public final class ToStringBudget {
+
+    /**
+     * A budget without any limits.
+     */
+    public static final ToStringBudget UNLIMITED = ToStringBudget.builder().build();
+
+    /**
+     * Maximum number of characters written. The output is cut off at this length and {@link ToString#TS_EXPR_OMITTED} is appended.
+     */
+    @Builder.Default
+    private final int maxLength = Integer.MAX_VALUE;
+
+    /**
+     * Maximum depth of nested objects below the converted object. Deeper objects are written as {@code Class[...]}.
+     */
+    @Builder.Default
+    private final int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Maximum number of elements written per collection, map or array. Further elements are summarized as {@code ...(+n more)}.
+     */
+    @Builder.Default
+    private final int maxElements = Integer.MAX_VALUE;
+
+    /**
+     * Maximum number of objects, collections, maps and arrays visited in total.
+     * When exceeded, the conversion stops and {@link ToString#TS_EXPR_OMITTED} is appended.
+     */
+    @Builder.Default
+    private final int maxNodes = Integer.MAX_VALUE;
+
+    /**
+     * Check whether any limit is set.
+     *
+     * @return Whether the budget limits the conversion at all.
+     */
+    boolean isLimited() {
+        return maxLength != Integer.MAX_VALUE || maxDepth != Integer.MAX_VALUE || maxElements != Integer.MAX_VALUE || maxNodes != Integer.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,23 @@
+package de.tilokowalski.util;
+
+/**
+ * Format in which the content of {@code byte[]} arrays is written when they are resolved.
+ */
+public enum ToStringByteFormat {
+
+    /**
+     * Each byte is written as a separate element, like the elements of any other array.
+     */
+    ELEMENTS,
+
+    /**
+     * All bytes are written as a single string of two lower case hexadecimal digits per byte.
+     */
+    HEX,
+
+    /**
+     * All bytes are written as a single Base64 string, as specified by RFC 4648.
+     */
+    BASE64
+
+}
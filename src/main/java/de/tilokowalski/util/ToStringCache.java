@@ -0,0 +1,19 @@
+package de.tilokowalski.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to indicate that objects of a class are immutable, so their string representations may be cached.
+ * Renderers with a cache, see {@code ToStringRenderer.builder().cacheSize(int)}, write an object of such a class
+ * from the cache when it is converted again, without traversing its nested objects. Records are cached without this annotation.
+ * The cached representation is only reused if none of the nested objects has already been written in the same conversion,
+ * so the output is the same as without cache, as long as the objects do not change.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToStringCache {
+
+}
@@ -0,0 +1,34 @@
+package de.tilokowalski.util;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of the cache of a renderer, see {@link ToStringRenderer#getCacheStatistics()}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class ToStringCacheStatistics {
+
+    /**
+     * Number of objects written from the cache.
+     */
+    private final long hits;
+
+    /**
+     * Number of cacheable objects not found in the cache, or whose cached representation could not be reused.
+     */
+    private final long misses;
+
+    /**
+     * Number of representations evicted because the cache was full or their object has been garbage collected.
+     */
+    private final long evictions;
+
+    /**
+     * Number of representations currently cached.
+     */
+    private final int size;
+
+}
@@ -0,0 +1,107 @@
+package de.tilokowalski.util;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of all conversions of objects of a certain class, see {@link ToStringMetrics#getClassMetrics()}.
+ * The latency histogram has a bucket per power of two, bucket {@code i} counts the conversions that took
+ * at least {@code 2^(i-1)} and less than {@code 2^i} nanoseconds, the last bucket also the longer ones.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class ToStringClassMetrics {
+
+    /**
+     * The class of the converted objects, {@code null} for conversions of {@code null}.
+     */
+    private final Class<?> type;
+
+    /**
+     * Number of conversions.
+     */
+    private final long renders;
+
+    /**
+     * Number of objects that could not be converted, including nested objects written as {@code null}.
+     */
+    private final long errors;
+
+    /**
+     * Number of conversions of which any part has been omitted because of the budget.
+     */
+    private final long truncations;
+
+    /**
+     * Total duration of all conversions in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * Total number of characters written by all conversions.
+     */
+    private final long outputLength;
+
+    /**
+     * Total number of objects and containers visited by all conversions.
+     */
+    private final long nodes;
+
+    /**
+     * Maximum depth of nested objects reached by any conversion.
+     */
+    private final long maxDepth;
+
+    /**
+     * Number of conversions per bucket of duration.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long[] latencyHistogram;
+
+    /**
+     * Get the number of conversions per bucket of duration.
+     *
+     * @return A copy of the histogram, bucket {@code i} counting durations of less than {@code 2^i} nanoseconds.
+     */
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * Get the average duration of a conversion.
+     *
+     * @return The average duration in nanoseconds, {@code 0} if there have been no conversions.
+     */
+    public long getAverageNanos() {
+        return renders == 0 ? 0 : totalNanos / renders;
+    }
+
+    /**
+     * Get an upper bound of the duration of a given share of the conversions, taken from the latency histogram.
+     *
+     * @param quantile The share of conversions, like {@code 0.99} for the 99th percentile.
+     * @return The upper bound of the bucket containing the quantile in nanoseconds, {@code 0} if there have been no conversions.
+     */
+    public long getLatencyPercentile(double quantile) {
+        long total = 0;
+
+        for (long count : latencyHistogram) {
+            total += count;
+        }
+
+        long threshold = (long) Math.ceil(total * quantile);
+        long seen = 0;
+
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            seen += latencyHistogram[i];
+
+            if (seen > 0 && seen >= threshold) {
+                return 1L << i;
+            }
+        }
+
+        return 0;
+    }
+
+}
@@ -0,0 +1,20 @@
+package de.tilokowalski.util;
+
+/**
+ * Engines available to create the string representation of the fields of an object.
+ * Both engines produce exactly the same output.
+ */
+public enum ToStringEngine {
+
+    /**
+     * Interprets the class metadata on every conversion, deciding how to format each value when it is appended.
+     */
+    INTERPRETED,
+
+    /**
+     * Compiles the layout of a class once per delimiter and level into a flat list of steps with precomputed
+     * literals and value writers specialized for the declared field types, and reuses it for later conversions.
+     */
+    COMPILED
+
+}
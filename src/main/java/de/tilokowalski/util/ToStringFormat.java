@@ -0,0 +1,25 @@
+package de.tilokowalski.util;
+
+/**
+ * Output formats of a renderer, all written in a single pass over the object graph with the same fields and annotations.
+ */
+public enum ToStringFormat {
+
+    /**
+     * The string representation like {@code Person[name="John Doe",address=Address[]]}.
+     */
+    TEXT,
+
+    /**
+     * A JSON document, indented if the delimiter is {@link ToString#TS_DELIMITER_ML}, otherwise on a single line.
+     * Objects are written as JSON objects with their simple class name as member {@code "@class"},
+     * collections and arrays as JSON arrays, and maps as JSON objects.
+     */
+    JSON,
+
+    /**
+     * A JSON document on a single line, terminated by a line break, so conversions written to the same stream form JSON Lines.
+     */
+    JSON_LINES
+
+}
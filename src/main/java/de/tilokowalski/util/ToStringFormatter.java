@@ -0,0 +1,20 @@
+package de.tilokowalski.util;
+
+/**
+ * Formats values of a certain class as a single value instead of resolving their fields.
+ * Formatters are looked up by the exact runtime class of a value and may be shared by all threads, so they must be stateless or thread-safe.
+ *
+ * @param <T> The class of the values to format.
+ */
+@FunctionalInterface
+public interface ToStringFormatter<T> {
+
+    /**
+     * Append the representation of a value.
+     *
+     * @param value The value to format, never {@code null}.
+     * @param result The StringBuilder to append to.
+     */
+    void format(T value, StringBuilder result);
+
+}
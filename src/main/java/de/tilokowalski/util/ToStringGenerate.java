@@ -0,0 +1,17 @@
+package de.tilokowalski.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to indicate that a {@link ToStringTemplate} should be generated for a class at build time.
+ * Requires the annotation processor of the {@code tostring-util-processor} artifact, the generated template
+ * is then used instead of reflection to read the fields of the class.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToStringGenerate {
+
+}
@@ -0,0 +1,96 @@
+package de.tilokowalski.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Deferred string representation of an object, created by {@link ToString#lazy(Object)}, {@link ToString#lazyDump(Object)},
+ * {@link ToStringRenderer#lazy(Object)} or {@link ToStringSampler#lazy(Object)}. Capturing a handle costs a single small allocation,
+ * the object is only converted when {@link #toString()} or {@link #get()} is called for the first time, and the result is kept for later calls.
+ * Passed as argument of a log statement, the object is therefore never converted if the log level is disabled.
+ * Handles may be shared by threads, concurrent first calls may convert the object more than once but return equal strings.
+ */
+public final class ToStringHandle implements Supplier<String> {
+
+    /**
+     * The renderer converting the object, {@code null} if converted by a sampler.
+     */
+    private final ToStringRenderer renderer;
+
+    /**
+     * The sampler converting or summarizing the object, {@code null} if converted by a renderer.
+     */
+    private final ToStringSampler sampler;
+
+    /**
+     * The object to be represented as a string.
+     */
+    private final Object object;
+
+    /**
+     * The string representation of the object, {@code null} until converted.
+     */
+    private volatile String result;
+
+    /**
+     * Creates a handle converting an object on first use.
+     *
+     * @param renderer The renderer converting the object.
+     * @param object The object to be represented as a string.
+     */
+    ToStringHandle(ToStringRenderer renderer, Object object) {
+        this.renderer = renderer;
+        this.sampler = null;
+        this.object = object;
+    }
+
+    /**
+     * Creates a handle converting or summarizing an object on first use.
+     *
+     * @param sampler The sampler converting or summarizing the object.
+     * @param object The object to be represented as a string.
+     */
+    ToStringHandle(ToStringSampler sampler, Object object) {
+        this.renderer = null;
+        this.sampler = sampler;
+        this.object = object;
+    }
+
+    /**
+     * Convert the object right away, so later changes of the object are not reflected by the string representation.
+     * Use this when the object may change before the handle is written, at the cost of converting it even if it is never written.
+     *
+     * @return This handle, already holding the string representation.
+     */
+    public ToStringHandle snapshot() {
+        toString();
+        return this;
+    }
+
+    /**
+     * Get the string representation of the object, converting it on first use.
+     *
+     * @return String representation of the object.
+     */
+    @Override
+    public String get() {
+        return toString();
+    }
+
+    /**
+     * Get the string representation of the object, converting it on first use.
+     *
+     * @return String representation of the object, or {@code "null"} if it can not be created.
+     */
+    @Override
+    public String toString() {
+        String current = result;
+
+        if (current == null) {
+            current = String.valueOf(sampler != null ? sampler.render(object) : renderer.render(object));
+            result = current;
+        }
+
+        return current;
+    }
+
+}
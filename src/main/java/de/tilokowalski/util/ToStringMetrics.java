@@ -0,0 +1,401 @@
+package de.tilokowalski.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * In-process metrics of all conversions, counted per class of the converted object.
+ * The metrics are disabled by default, then a conversion only checks a single flag.
+ * When enabled, each conversion is measured and added to counters made of {@link LongAdder}s,
+ * which are striped across threads, so concurrent conversions of the same class do not contend.
+ * The metrics can be read by {@link #getClassMetrics()}, or through JMX after {@link #registerMBean()}.
+ * The counters are attached to their class by a {@link ClassValue} and reference it only weakly, so measured classes
+ * and their class loaders can still be unloaded, their counters are dropped with them.
+ * Independent of these metrics, each conversion is also recorded as JDK Flight Recorder event {@value RenderEvent#NAME}
+ * whenever a recording enables it.
+ */
+public final class ToStringMetrics {
+
+    /**
+     * Name under which the management interface is registered.
+     */
+    public static final String TS_MBEAN_NAME = "de.tilokowalski.util:type=ToStringMetrics";
+
+    /**
+     * Number of buckets of the latency histograms, the last one counting all durations of more than about 4.5 minutes.
+     */
+    static final int LATENCY_BUCKETS = 40;
+
+    /**
+     * The counters by class of the converted object.
+     */
+    private static final ClassValue<Counters> COUNTERS = new ClassValue<>() {
+        @Override
+        protected Counters computeValue(Class<?> type) {
+            Counters counters = new Counters(type);
+            REGISTRY.add(new WeakReference<>(counters));
+            return counters;
+        }
+    };
+
+    /**
+     * The counters of all classes, referenced weakly to enumerate them, they are kept alive only by their class.
+     */
+    private static final Set<WeakReference<Counters>> REGISTRY = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The counters of conversions of {@code null}.
+     */
+    private static final Counters NULL_COUNTERS = new Counters(null);
+
+    /**
+     * Whether conversions are measured.
+     */
+    private static volatile boolean enabled;
+
+    /**
+     * Utility class, not to be instantiated.
+     */
+    private ToStringMetrics() {
+    }
+
+    /**
+     * Start measuring conversions.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Stop measuring conversions, keeping the counters.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Get whether conversions are measured.
+     *
+     * @return Whether the metrics are enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remove the counters of all classes.
+     */
+    public static void reset() {
+        for (WeakReference<Counters> reference : REGISTRY) {
+            Counters counters = reference.get();
+            Class<?> type = counters == null ? null : counters.type.get();
+
+            if (type != null) {
+                COUNTERS.remove(type);
+            }
+
+            REGISTRY.remove(reference);
+        }
+
+        NULL_COUNTERS.reset();
+    }
+
+    /**
+     * Get the counters of all classes converted so far, the classes with the longest total duration first.
+     *
+     * @return The counters per class.
+     */
+    public static List<ToStringClassMetrics> getClassMetrics() {
+        List<ToStringClassMetrics> metrics = new ArrayList<>(REGISTRY.size() + 1);
+
+        for (WeakReference<Counters> reference : REGISTRY) {
+            Counters counters = reference.get();
+            Class<?> type = counters == null ? null : counters.type.get();
+
+            if (type == null) {
+                REGISTRY.remove(reference);
+            } else if (counters.renders.sum() > 0) {
+                metrics.add(counters.snapshot(type));
+            }
+        }
+
+        if (NULL_COUNTERS.renders.sum() > 0) {
+            metrics.add(NULL_COUNTERS.snapshot(null));
+        }
+
+        metrics.sort(Comparator.comparingLong(ToStringClassMetrics::getTotalNanos).reversed());
+        return metrics;
+    }
+
+    /**
+     * Get the counters of a single class.
+     *
+     * @param type The class of the converted objects, {@code null} for conversions of {@code null}.
+     * @return The counters of the class, all zero if not converted so far.
+     */
+    public static ToStringClassMetrics getClassMetrics(Class<?> type) {
+        return (type == null ? NULL_COUNTERS : COUNTERS.get(type)).snapshot(type);
+    }
+
+    /**
+     * Register the management interface {@link ToStringMetricsMXBean} at the platform MBean server as {@value #TS_MBEAN_NAME}.
+     * Registering it again has no effect.
+     *
+     * @throws IllegalStateException When the management interface can not be registered.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new Bean(), ToStringMetricsMXBean.class, true), new ObjectName(TS_MBEAN_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            /* ALREADY REGISTERED */
+        } catch (JMException e) {
+            throw new IllegalStateException("management interface could not be registered", e);
+        }
+    }
+
+    /**
+     * Remove the management interface from the platform MBean server, if registered.
+     *
+     * @throws IllegalStateException When the management interface can not be unregistered.
+     */
+    public static void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(TS_MBEAN_NAME));
+        } catch (InstanceNotFoundException e) {
+            /* NOT REGISTERED */
+        } catch (JMException e) {
+            throw new IllegalStateException("management interface could not be unregistered", e);
+        }
+    }
+
+    /**
+     * Add a measured conversion to the counters of the class of its object.
+     *
+     * @param type The class of the converted object, {@code null} for conversions of {@code null}.
+     * @param nanos The duration of the conversion in nanoseconds.
+     * @param outputLength The number of characters written.
+     * @param nodes The number of objects and containers visited.
+     * @param maxDepth The maximum depth of nested objects reached.
+     * @param truncated Whether any part of the object graph has been omitted because of the budget.
+     * @param errors The number of objects that could not be converted.
+     */
+    static void record(Class<?> type, long nanos, long outputLength, int nodes, int maxDepth, boolean truncated, int errors) {
+        Counters counters = type == null ? NULL_COUNTERS : COUNTERS.get(type);
+
+        counters.renders.increment();
+        counters.totalNanos.add(nanos);
+        counters.outputLength.add(outputLength);
+        counters.nodes.add(nodes);
+        counters.maxDepth.accumulate(maxDepth);
+        counters.latency[Math.min(64 - Long.numberOfLeadingZeros(nanos), LATENCY_BUCKETS - 1)].increment();
+
+        if (truncated) {
+            counters.truncations.increment();
+        }
+
+        if (errors > 0) {
+            counters.errors.add(errors);
+        }
+    }
+
+    /**
+     * Sum a counter over all classes.
+     *
+     * @param counter The counter of a class.
+     * @return The sum of the counter.
+     */
+    private static long sum(ToLongFunction<ToStringClassMetrics> counter) {
+        long sum = 0;
+
+        for (ToStringClassMetrics metrics : getClassMetrics()) {
+            sum += counter.applyAsLong(metrics);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Map a counter by class name.
+     *
+     * @param counter The counter of a class.
+     * @return The counter by class name, the classes with the longest total duration first.
+     */
+    private static Map<String, Long> byClass(ToLongFunction<ToStringClassMetrics> counter) {
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        for (ToStringClassMetrics metrics : getClassMetrics()) {
+            values.put(metrics.getType() == null ? ToString.TS_EXPR_NULL : metrics.getType().getName(), counter.applyAsLong(metrics));
+        }
+
+        return values;
+    }
+
+    /**
+     * The counters of a single class.
+     */
+    private static final class Counters {
+
+        /**
+         * The class of the converted objects, referenced weakly so the counters do not keep it alive, {@code null} for conversions of {@code null}.
+         */
+        private final WeakReference<Class<?>> type;
+
+        /**
+         * Number of conversions.
+         */
+        private final LongAdder renders = new LongAdder();
+
+        /**
+         * Number of objects that could not be converted.
+         */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Number of truncated conversions.
+         */
+        private final LongAdder truncations = new LongAdder();
+
+        /**
+         * Total duration in nanoseconds.
+         */
+        private final LongAdder totalNanos = new LongAdder();
+
+        /**
+         * Total number of characters written.
+         */
+        private final LongAdder outputLength = new LongAdder();
+
+        /**
+         * Total number of objects and containers visited.
+         */
+        private final LongAdder nodes = new LongAdder();
+
+        /**
+         * Maximum depth of nested objects reached.
+         */
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Number of conversions per bucket of duration.
+         */
+        private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+        /**
+         * Creates the counters of a class.
+         *
+         * @param type The class of the converted objects.
+         */
+        private Counters(Class<?> type) {
+            this.type = new WeakReference<>(type);
+
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                latency[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Reset all counters.
+         */
+        private void reset() {
+            renders.reset();
+            errors.reset();
+            truncations.reset();
+            totalNanos.reset();
+            outputLength.reset();
+            nodes.reset();
+            maxDepth.reset();
+
+            for (LongAdder bucket : latency) {
+                bucket.reset();
+            }
+        }
+
+        /**
+         * Read the current values of the counters, which are not modified atomically with each other.
+         *
+         * @param type The class of the converted objects, still referenced by the caller.
+         * @return The values of the counters.
+         */
+        private ToStringClassMetrics snapshot(Class<?> type) {
+            long[] histogram = new long[LATENCY_BUCKETS];
+
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                histogram[i] = latency[i].sum();
+            }
+
+            return new ToStringClassMetrics(type, renders.sum(), errors.sum(), truncations.sum(), totalNanos.sum(),
+                outputLength.sum(), nodes.sum(), maxDepth.get(), histogram);
+        }
+
+    }
+
+    /**
+     * The management interface, reading the metrics on each access.
+     */
+    private static final class Bean implements ToStringMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            ToStringMetrics.enabled = enabled;
+        }
+
+        @Override
+        public long getRenders() {
+            return sum(ToStringClassMetrics::getRenders);
+        }
+
+        @Override
+        public long getErrors() {
+            return sum(ToStringClassMetrics::getErrors);
+        }
+
+        @Override
+        public long getTotalNanos() {
+            return sum(ToStringClassMetrics::getTotalNanos);
+        }
+
+        @Override
+        public Map<String, Long> getRendersByClass() {
+            return byClass(ToStringClassMetrics::getRenders);
+        }
+
+        @Override
+        public Map<String, Long> getTotalNanosByClass() {
+            return byClass(ToStringClassMetrics::getTotalNanos);
+        }
+
+        @Override
+        public Map<String, Long> getLatencyP99ByClass() {
+            return byClass(metrics -> metrics.getLatencyPercentile(0.99));
+        }
+
+        @Override
+        public void reset() {
+            ToStringMetrics.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.tilokowalski.util;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of all conversions, registered by {@link ToStringMetrics#registerMBean()}.
+ * The counters by class are keyed by the fully qualified class name, {@code "NULL"} for conversions of {@code null}.
+ */
+public interface ToStringMetricsMXBean {
+
+    /**
+     * Get whether conversions are measured.
+     *
+     * @return Whether the metrics are enabled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable measuring conversions.
+     *
+     * @param enabled Whether the metrics are enabled.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Get the number of conversions of all classes.
+     *
+     * @return The number of conversions.
+     */
+    long getRenders();
+
+    /**
+     * Get the number of objects of all classes that could not be converted.
+     *
+     * @return The number of errors.
+     */
+    long getErrors();
+
+    /**
+     * Get the total duration of the conversions of all classes.
+     *
+     * @return The total duration in nanoseconds.
+     */
+    long getTotalNanos();
+
+    /**
+     * Get the number of conversions by class.
+     *
+     * @return The number of conversions by class name.
+     */
+    Map<String, Long> getRendersByClass();
+
+    /**
+     * Get the total duration of the conversions by class.
+     *
+     * @return The total duration in nanoseconds by class name.
+     */
+    Map<String, Long> getTotalNanosByClass();
+
+    /**
+     * Get the 99th percentile of the duration of the conversions by class.
+     *
+     * @return The upper bound of the 99th percentile in nanoseconds by class name.
+     */
+    Map<String, Long> getLatencyP99ByClass();
+
+    /**
+     * Reset all counters.
+     */
+    void reset();
+
+}
@@ -0,0 +1,284 @@
+package de.tilokowalski.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import lombok.Getter;
+
+/**
+ * Selection of the fields to be written, given as field paths like {@code id}, {@code address.city} or {@code addresses[].city}.
+ * Each segment of a path is the name of a field, or a pattern with {@code *} matching any number of characters,
+ * so {@code *} alone selects all fields of an object. A segment followed by {@code []} continues with the elements of a collection,
+ * map or array, which may also be left out, as paths reaching a container always apply to its elements.
+ * The selected values are written like without projection, the objects on the way to them only with the selected fields.
+ * The paths are compiled once into a tree, which is resolved per class into the positions of the selected fields on first use,
+ * so rendering only reads the selected fields and never inspects the rest of the object graph.
+ * Projections are immutable and may be shared by any number of renderers and threads.
+ */
+public final class ToStringProjection {
+
+    /**
+     * Suffix of a segment continuing with the elements of a container.
+     */
+    private static final String TS_ELEMENTS = "[]";
+
+    /**
+     * The field paths of the projection.
+     */
+    @Getter
+    private final List<String> paths;
+
+    /**
+     * The compiled tree, applying to the object that is converted.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Compiles a projection from its field paths.
+     *
+     * @param paths The field paths.
+     */
+    private ToStringProjection(List<String> paths) {
+        this.paths = paths;
+
+        for (String path : paths) {
+            Node node = root;
+
+            for (String segment : path.split("\\.", -1)) {
+                int elements = 0;
+
+                while (segment.endsWith(TS_ELEMENTS)) {
+                    segment = segment.substring(0, segment.length() - TS_ELEMENTS.length());
+                    elements++;
+                }
+
+                if (segment.isEmpty()) {
+                    throw new IllegalArgumentException("field path contains an empty segment: " + path);
+                }
+
+                node = node.child(segment);
+
+                for (int i = 0; i < elements; i++) {
+                    node = node.elements();
+                }
+            }
+
+            node.selected = true;
+        }
+    }
+
+    /**
+     * Compiles a projection from field paths.
+     *
+     * @param paths The field paths, like {@code address.city}.
+     * @return The projection.
+     * @throws IllegalArgumentException When a field path contains an empty segment.
+     */
+    public static ToStringProjection of(String... paths) {
+        return new ToStringProjection(List.of(paths));
+    }
+
+    /**
+     * Get the compiled tree, applying to the object that is converted.
+     *
+     * @return The root of the tree.
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Node of the compiled tree, selecting fields of the objects it applies to.
+     * The tree is complete before the projection is published, only the plans are added later, by a thread-safe {@link ClassValue}.
+     */
+    static final class Node {
+
+        /**
+         * Children by the exact name of the field they apply to.
+         */
+        private final Map<String, Node> named = new LinkedHashMap<>();
+
+        /**
+         * Children applying to the fields whose names match a pattern, by the segment containing the pattern.
+         */
+        private final Map<String, Node> matching = new LinkedHashMap<>();
+
+        /**
+         * The compiled patterns of the segments of {@link #matching}.
+         */
+        private final Map<String, Pattern> patterns = new LinkedHashMap<>();
+
+        /**
+         * Plans of the node per class of the objects it applies to.
+         */
+        private final ClassValue<Plan> plans = new ClassValue<>() {
+            @Override
+            protected Plan computeValue(Class<?> type) {
+                return plan(ClassMetadata.of(type));
+            }
+        };
+
+        /**
+         * The node applying to the elements of a container, {@code null} if the node applies to the elements itself.
+         */
+        private Node elements;
+
+        /**
+         * Whether the value this node applies to is selected as a whole.
+         */
+        private boolean selected;
+
+        /**
+         * Get the node applying to the elements of a container this node applies to.
+         *
+         * @return The node applying to the elements.
+         */
+        Node getElements() {
+            return elements != null ? elements : this;
+        }
+
+        /**
+         * Get the plan of this node for an object.
+         *
+         * @param type The class of the object.
+         * @return The plan selecting the fields of the object.
+         */
+        Plan getPlan(Class<?> type) {
+            return plans.get(type);
+        }
+
+        /**
+         * Get or create the child for a segment of a field path.
+         *
+         * @param segment The name of a field, or a pattern with {@code *}.
+         * @return The child.
+         */
+        private Node child(String segment) {
+            if (segment.indexOf('*') < 0) {
+                return named.computeIfAbsent(segment, name -> new Node());
+            }
+
+            patterns.computeIfAbsent(segment, pattern -> Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q")));
+            return matching.computeIfAbsent(segment, pattern -> new Node());
+        }
+
+        /**
+         * Get or create the child for the elements of a container.
+         *
+         * @return The child.
+         */
+        private Node elements() {
+            if (elements == null) {
+                elements = new Node();
+            }
+
+            return elements;
+        }
+
+        /**
+         * Resolve the fields of a class selected by the children of this node.
+         *
+         * @param metadata The metadata of the class.
+         * @return The plan of this node for the class.
+         */
+        private Plan plan(ClassMetadata metadata) {
+            List<Integer> fields = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+
+            for (int i = 0, count = metadata.getFieldCount(ToString.TS_LEVEL_DEEP); i < count; i++) {
+                String name = metadata.getField(i).getName();
+                List<Node> nodes = new ArrayList<>();
+
+                if (named.containsKey(name)) {
+                    nodes.add(named.get(name));
+                }
+
+                for (Map.Entry<String, Node> entry : matching.entrySet()) {
+                    if (patterns.get(entry.getKey()).matcher(name).matches()) {
+                        nodes.add(entry.getValue());
+                    }
+                }
+
+                if (!nodes.isEmpty()) {
+                    fields.add(i);
+                    children.add(merge(nodes));
+                }
+            }
+
+            return new Plan(fields.stream().mapToInt(Integer::intValue).toArray(), children.toArray(new Node[0]));
+        }
+
+        /**
+         * Merge the nodes applying to the same field.
+         *
+         * @param nodes The nodes to merge.
+         * @return The merged node, or {@code null} if the field is selected as a whole by any of them.
+         */
+        private static Node merge(List<Node> nodes) {
+            Node merged = nodes.size() == 1 ? nodes.get(0) : new Node();
+
+            for (Node node : nodes) {
+                if (node.selected) {
+                    return null;
+                }
+
+                if (node != merged) {
+                    merged.addAll(node);
+                }
+            }
+
+            return merged;
+        }
+
+        /**
+         * Add all children of another node to this node, merging children for the same field.
+         *
+         * @param node The node whose children to add.
+         */
+        private void addAll(Node node) {
+            selected |= node.selected;
+
+            for (Map.Entry<String, Node> entry : node.named.entrySet()) {
+                named.computeIfAbsent(entry.getKey(), name -> new Node()).addAll(entry.getValue());
+            }
+
+            for (Map.Entry<String, Node> entry : node.matching.entrySet()) {
+                child(entry.getKey()).addAll(entry.getValue());
+            }
+
+            if (node.elements != null) {
+                elements().addAll(node.elements);
+            }
+        }
+
+    }
+
+    /**
+     * The fields of a class selected by a node, in the order of the fields.
+     *
+     * @param fields The positions of the selected fields in the class metadata.
+     * @param children The node applying to the value of each selected field, {@code null} if selected as a whole.
+     */
+    record Plan(int[] fields, Node[] children) {
+
+        /**
+         * Get the number of selected fields up to a certain level of class hierarchy.
+         *
+         * @param fieldCount The number of fields included up to the level.
+         * @return The number of selected fields, which are the first ones of the plan.
+         */
+        int getFieldCount(int fieldCount) {
+            int count = 0;
+
+            while (count < fields.length && fields[count] < fieldCount) {
+                count++;
+            }
+
+            return count;
+        }
+
+    }
+
+}
@@ -0,0 +1,547 @@
+package de.tilokowalski.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+/**
+ * Immutable configuration for creating string representations, built once and shared by all threads.
+ * The indentation and the sequences separating fields and elements are precomputed for the first levels of nesting,
+ * and class metadata is cached per class, so rendering with a renderer does no setup work.
+ * A pooled renderer also reuses the buffers, frames and contexts of its conversions, so after warm-up
+ * a conversion allocates nothing but the resulting string, or nothing at all when writing to a target of the caller.
+ */
+@Getter
+public final class ToStringRenderer {
+
+    /**
+     * Number of levels of nesting for which indentation and separators are precomputed.
+     */
+    private static final int PRECOMPUTED_NESTING = 16;
+
+    /**
+     * Size of the buffer encoding representations written to streams and channels.
+     */
+    private static final int BYTE_BUFFER_SIZE = 8192;
+
+    /**
+     * Renderer using single line delimiter and not resolving nested objects, as used by {@link ToString#create(Object)}.
+     */
+    public static final ToStringRenderer DEFAULT = ToStringRenderer.builder().build();
+
+    /**
+     * Renderer using multi-line indentations and resolving nested objects, as used by {@link ToString#createDump(Object)}.
+     */
+    public static final ToStringRenderer DUMP = ToStringRenderer.builder().delimiter(ToString.TS_DELIMITER_ML).resolve(true).build();
+
+    /**
+     * Renderer writing single line JSON and resolving nested objects, as used by {@link ToString#createJson(Object)}.
+     */
+    public static final ToStringRenderer JSON = ToStringRenderer.builder().format(ToStringFormat.JSON).resolve(true).build();
+
+    /**
+     * Renderers shared by conversions of {@link ToString} with custom parameters but without budget, by their parameters.
+     */
+    private static final Map<Parameters, ToStringRenderer> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * The character to be used as delimiter between fields.
+     */
+    private final char delimiter;
+
+    /**
+     * The string written once per level of nesting in multi-line representations.
+     */
+    private final String indent;
+
+    /**
+     * Level of class hierarchy to be explored.
+     */
+    private final int level;
+
+    /**
+     * Whether to resolve nested objects or not.
+     */
+    private final boolean resolve;
+
+    /**
+     * Limits of each conversion.
+     */
+    private final ToStringBudget budget;
+
+    /**
+     * Formatters used by this renderer in addition to the registered ones, by the exact class they format.
+     */
+    private final Map<Class<?>, ToStringFormatter<?>> formatters;
+
+    /**
+     * Whether conversions reuse pooled buffers and contexts.
+     */
+    private final boolean pooled;
+
+    /**
+     * Whether objects are identified on first appearance and written as back-references when referenced again,
+     * instead of writing every object referenced again as circular reference.
+     */
+    private final boolean deduplicate;
+
+    /**
+     * Whether large collections, maps and arrays are written in chunks in parallel.
+     * Only applies without budget and deduplication, the output is the same as when written sequentially.
+     */
+    private final boolean parallel;
+
+    /**
+     * The pool writing chunks in parallel.
+     */
+    private final ForkJoinPool parallelPool;
+
+    /**
+     * Minimum number of elements of a collection, map or array to be written in parallel.
+     */
+    private final int parallelThreshold;
+
+    /**
+     * Maximum number of representations of immutable objects cached by this renderer, {@code 0} if not cached.
+     * Only applies without budget and deduplication.
+     */
+    private final int cacheSize;
+
+    /**
+     * The cache of representations of immutable objects, {@code null} if not cached.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final RenderCache cache;
+
+    /**
+     * The fields to be written, {@code null} if all fields are written.
+     * Selected fields are written regardless of resolving nested objects, containers and objects on their path are resolved.
+     * Containers with selected elements are written sequentially and objects on the path of selected fields are not cached.
+     */
+    private final ToStringProjection projection;
+
+    /**
+     * The output format. JSON is written sequentially, without cache, deduplication and projection.
+     */
+    private final ToStringFormat format;
+
+    /**
+     * The pool of states reused by conversions, {@code null} if not pooled.
+     */
+    @Getter(AccessLevel.NONE)
+    private final RenderPool pool;
+
+    /**
+     * Indentation for each level of nesting, starting at nesting {@code -1}, i.e. without indentation.
+     */
+    @Getter(AccessLevel.NONE)
+    private final String[] indentations;
+
+    /**
+     * Delimiter followed by the indentation for each level of nesting, starting at nesting {@code -1}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final String[] separators;
+
+    /**
+     * Creates a renderer, precomputing indentation and separators.
+     *
+     * @param delimiter The character to be used as delimiter between fields.
+     * @param indent The string written once per level of nesting.
+     * @param level Level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param budget Limits of each conversion.
+     * @param formatters Formatters used in addition to the registered ones.
+     * @param pooled Whether conversions reuse pooled buffers and contexts.
+     * @param deduplicate Whether objects referenced again are written as back-references to their identifier.
+     * @param parallel Whether large containers are written in chunks in parallel.
+     * @param parallelPool The pool writing chunks in parallel, {@code null} for the common pool.
+     * @param parallelThreshold Minimum number of elements of a container to be written in parallel.
+     * @param cacheSize Maximum number of representations of immutable objects to cache, {@code 0} to disable the cache.
+     * @param projection The fields to be written, {@code null} to write all fields.
+     * @param format The output format, {@code null} for {@link ToStringFormat#TEXT}.
+     */
+    @Builder
+    private ToStringRenderer(char delimiter, String indent, int level, boolean resolve, ToStringBudget budget,
+                             @Singular Map<Class<?>, ToStringFormatter<?>> formatters, boolean pooled,
+                             boolean deduplicate, boolean parallel, ForkJoinPool parallelPool, int parallelThreshold, int cacheSize,
+                             ToStringProjection projection, ToStringFormat format) {
+        this.delimiter = delimiter;
+        this.indent = indent == null ? "\t" : indent;
+        this.level = level;
+        this.resolve = resolve;
+        this.budget = budget == null ? ToStringBudget.UNLIMITED : budget;
+        this.formatters = Map.copyOf(formatters);
+        this.pooled = pooled;
+        this.deduplicate = deduplicate;
+        this.parallel = parallel;
+        this.parallelPool = parallelPool == null ? ForkJoinPool.commonPool() : parallelPool;
+        this.parallelThreshold = parallelThreshold;
+        this.cacheSize = cacheSize;
+        this.cache = cacheSize > 0 ? new RenderCache(cacheSize) : null;
+        this.projection = projection;
+        this.format = format == null ? ToStringFormat.TEXT : format;
+        this.pool = pooled ? new RenderPool(this) : null;
+        this.indentations = new String[PRECOMPUTED_NESTING + 1];
+        this.separators = new String[PRECOMPUTED_NESTING + 1];
+
+        for (int i = 0; i <= PRECOMPUTED_NESTING; i++) {
+            indentations[i] = this.indent.repeat(i);
+            separators[i] = delimiter + indentations[i];
+        }
+    }
+
+    /**
+     * Get a renderer shared by all conversions with the same custom parameters and no budget.
+     *
+     * @param delimiter The character to be used as delimiter.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     * @return The shared renderer.
+     */
+    static ToStringRenderer shared(char delimiter, int level, boolean resolve) {
+        if (level == ToString.TS_LEVEL_DEEP && delimiter == DEFAULT.delimiter && resolve == DEFAULT.resolve) {
+            return DEFAULT;
+        }
+
+        if (level == ToString.TS_LEVEL_DEEP && delimiter == DUMP.delimiter && resolve == DUMP.resolve) {
+            return DUMP;
+        }
+
+        return SHARED.computeIfAbsent(new Parameters(delimiter, level, resolve),
+            parameters -> ToStringRenderer.builder().delimiter(delimiter).level(level).resolve(resolve).build());
+    }
+
+    /**
+     * Generates a string representation of an object.
+     *
+     * @param object The object to be represented as a string.
+     * @return String representation of the object, or {@code null} if it can not be created.
+     */
+    public String render(Object object) {
+        return render(object, 0);
+    }
+
+    /**
+     * Generates a string representation of a nested object.
+     *
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @return String representation of the object, or {@code null} if it can not be created.
+     */
+    String render(Object object, int nesting) {
+        RenderPool.State state = acquire();
+
+        try {
+            return state.render(object, nesting).toString();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            release(state);
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the counters of the cache of representations of immutable objects.
+     *
+     * @return The statistics of the cache, all zero if not cached.
+     */
+    public ToStringCacheStatistics getCacheStatistics() {
+        return cache == null ? new ToStringCacheStatistics(0, 0, 0, 0) : cache.getStatistics();
+    }
+
+    /**
+     * Defers the string representation of an object until it is needed.
+     *
+     * @param object The object to be represented as a string.
+     * @return Handle converting the object with this renderer on first use.
+     */
+    public ToStringHandle lazy(Object object) {
+        return new ToStringHandle(this, object);
+    }
+
+    /**
+     * Writes a string representation of an object directly to a StringBuilder of the caller.
+     * If the object can not be converted, the error is reported and the StringBuilder may contain part of the representation.
+     *
+     * @param stringBuilder The StringBuilder to append to.
+     * @param object The object to be represented as a string.
+     */
+    public void renderTo(StringBuilder stringBuilder, Object object) {
+        RenderPool.State state = acquire();
+
+        try {
+            state.render(stringBuilder, object, 0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Writes a string representation of an object to a character buffer of the caller.
+     * If the object can not be converted, the error is reported and nothing is written.
+     *
+     * @param charBuffer The character buffer to write to.
+     * @param object The object to be represented as a string.
+     * @throws BufferOverflowException When the representation does not fit into the remaining character buffer, nothing is written then.
+     */
+    public void renderTo(CharBuffer charBuffer, Object object) {
+        RenderPool.State state = acquire();
+
+        try {
+            state.render(charBuffer, object, 0);
+        } catch (BufferOverflowException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Writes a string representation of an object to an appendable target.
+     * The entire object graph is written in a single pass, without creating intermediate strings for nested objects.
+     *
+     * @param appendable The target to write to, like a {@link StringBuilder} or {@link Writer}.
+     * @param object The object to be represented as a string.
+     * @throws IOException When the target can not be written to.
+     */
+    public void renderTo(Appendable appendable, Object object) throws IOException {
+        renderTo(appendable, object, 0);
+    }
+
+    /**
+     * Writes a string representation of a nested object to an appendable target.
+     *
+     * @param appendable The target to write to.
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @throws IOException When the target can not be written to.
+     */
+    void renderTo(Appendable appendable, Object object, int nesting) throws IOException {
+        traverse(RenderSink.of(appendable), object, nesting);
+    }
+
+    /**
+     * Writes a string representation of an object to an output stream, encoded as UTF-8 while the object graph is traversed.
+     * Only a buffer of constant size is used, so even huge representations never exist as a whole in memory.
+     * The stream is flushed but not closed.
+     *
+     * @param outputStream The stream to write to.
+     * @param object The object to be represented as a string.
+     * @throws IOException When the stream can not be written to.
+     */
+    public void writeTo(OutputStream outputStream, Object object) throws IOException {
+        writeTo(outputStream, object, 0);
+    }
+
+    /**
+     * Writes a string representation of a nested object to an output stream, encoded as UTF-8.
+     *
+     * @param outputStream The stream to write to.
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @throws IOException When the stream can not be written to.
+     */
+    void writeTo(OutputStream outputStream, Object object, int nesting) throws IOException {
+        RenderSink.Utf8Sink sink = RenderSink.of(outputStream, BYTE_BUFFER_SIZE);
+
+        traverse(sink, object, nesting);
+        sink.finish();
+        outputStream.flush();
+    }
+
+    /**
+     * Writes a string representation of an object to a channel, like a {@link java.nio.channels.FileChannel}, encoded as UTF-8.
+     * The representation is encoded into a direct buffer of constant size, which is handed to the channel without further copying.
+     *
+     * @param channel The channel to write to.
+     * @param object The object to be represented as a string.
+     * @throws IOException When the channel can not be written to.
+     */
+    public void writeTo(WritableByteChannel channel, Object object) throws IOException {
+        RenderSink.Utf8Sink sink = RenderSink.of(channel, BYTE_BUFFER_SIZE);
+
+        traverse(sink, object, 0);
+        sink.finish();
+    }
+
+    /**
+     * Writes a string representation of an object to a byte buffer, like a region of a {@link java.nio.MappedByteBuffer}, encoded as UTF-8.
+     * The representation is encoded directly into the byte buffer, starting at its position, which is advanced.
+     * If the object can not be converted, the error is reported and the position is left unchanged.
+     *
+     * @param byteBuffer The byte buffer to write to.
+     * @param object The object to be represented as a string.
+     * @throws BufferOverflowException When the representation does not fit into the remaining byte buffer, the position is left unchanged then.
+     */
+    public void writeTo(ByteBuffer byteBuffer, Object object) {
+        int position = byteBuffer.position();
+        RenderSink.Utf8Sink sink = RenderSink.of(byteBuffer);
+
+        try {
+            traverse(sink, object, 0);
+            sink.finish();
+        } catch (BufferOverflowException e) {
+            byteBuffer.position(position);
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            byteBuffer.position(position);
+        }
+    }
+
+    /**
+     * Traverse the object graph of an object and write its string representation to a sink.
+     *
+     * @param sink The sink to write to.
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the object, used for indentation.
+     * @throws IOException When the target of the sink can not be written to, or the object can not be converted.
+     */
+    private void traverse(RenderSink sink, Object object, int nesting) throws IOException {
+        try {
+            new Traversal(sink, new RenderContext(), this).render(object, nesting);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("string representation could not be created", e);
+        }
+    }
+
+    /**
+     * Get the state for a conversion, taken from the pool if pooled.
+     *
+     * @return The state, confined to the calling thread until released.
+     */
+    private RenderPool.State acquire() {
+        return pool == null ? new RenderPool.State(this) : pool.acquire();
+    }
+
+    /**
+     * Return the state of a conversion to the pool if pooled.
+     *
+     * @param state The state, not to be used by the calling thread anymore.
+     */
+    private void release(RenderPool.State state) {
+        if (pool != null) {
+            pool.release(state);
+        }
+    }
+
+    /**
+     * Find the formatter of a class, preferring the formatters of this renderer over the registered ones.
+     *
+     * @param type The exact runtime class of a value.
+     * @return The formatter of the class, or {@code null} if values of the class are objects to be resolved.
+     */
+    @SuppressWarnings("unchecked")
+    ToStringFormatter<Object> findFormatter(Class<?> type) {
+        if (!formatters.isEmpty()) {
+            ToStringFormatter<?> formatter = formatters.get(type);
+
+            if (formatter != null) {
+                return (ToStringFormatter<Object>) formatter;
+            }
+        }
+
+        return FormatterRegistry.find(type);
+    }
+
+    /**
+     * Append the indentation of a multi-line representation for a certain depth.
+     *
+     * @param result The sink to write to.
+     * @param nesting The depth to indent for, resulting in one more indentation.
+     */
+    void appendIndentation(RenderSink result, int nesting) {
+        if (nesting < PRECOMPUTED_NESTING) {
+            result.append(indentations[nesting + 1]);
+            return;
+        }
+
+        for (int i = 0; i <= nesting; i++) {
+            result.append(indent);
+        }
+    }
+
+    /**
+     * Append the delimiter followed by the indentation for a certain depth.
+     *
+     * @param result The sink to write to.
+     * @param nesting The depth to indent for, resulting in one more indentation.
+     */
+    void appendSeparator(RenderSink result, int nesting) {
+        if (nesting < PRECOMPUTED_NESTING) {
+            result.append(separators[nesting + 1]);
+            return;
+        }
+
+        result.append(delimiter);
+        appendIndentation(result, nesting);
+    }
+
+    /**
+     * Builder of renderers, by default using single line delimiter, tabs for indentation,
+     * the entire class hierarchy, no resolving of nested objects, no budget, sequential writing, no cache and all fields.
+     */
+    public static final class ToStringRendererBuilder {
+
+        /**
+         * The character to be used as delimiter between fields.
+         */
+        private char delimiter = ToString.TS_DELIMITER_SL;
+
+        /**
+         * The string written once per level of nesting.
+         */
+        private String indent = "\t";
+
+        /**
+         * Level of class hierarchy to be explored.
+         */
+        private int level = ToString.TS_LEVEL_DEEP;
+
+        /**
+         * Limits of each conversion.
+         */
+        private ToStringBudget budget = ToStringBudget.UNLIMITED;
+
+        /**
+         * Minimum number of elements of a container to be written in parallel.
+         */
+        private int parallelThreshold = 10_000;
+
+    }
+
+    /**
+     * Custom parameters of a shared renderer.
+     *
+     * @param delimiter The character to be used as delimiter.
+     * @param level The level of class hierarchy to be explored.
+     * @param resolve Whether to resolve nested objects or not.
+     */
+    private record Parameters(char delimiter, int level, boolean resolve) {
+    }
+
+}
@@ -0,0 +1,250 @@
+package de.tilokowalski.util;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Front end of a renderer for hot paths, converting only a sample of the objects and summarizing the others in constant time.
+ * A conversion is sampled if it passes both 1-in-N sampling and a token bucket limiting the conversions per second,
+ * otherwise only the class name, the identity hash code and the size of containers are written, like {@code ArrayList@1b6d3586[3]}.
+ * A sampler is meant to be held per call site, e.g. by a constant next to a log statement, its token bucket then limits that call site.
+ * With {@code perClass}, each class of converted objects gets a token bucket of its own instead.
+ * Sampling takes a thread-local random number, and the token buckets are updated by a single compare-and-set,
+ * while rejections only read them, so under load, when most conversions are rejected, threads do not contend.
+ */
+@Getter
+public final class ToStringSampler {
+
+    /**
+     * Constant representing the separator between the class name and the identity hash code of a summary.
+     */
+    private static final char TS_IDENTITY = '@';
+
+    /**
+     * The renderer converting sampled objects.
+     */
+    private final ToStringRenderer renderer;
+
+    /**
+     * One in how many conversions is sampled, {@code 1} to sample all.
+     */
+    private final int sampleRate;
+
+    /**
+     * Maximum number of sampled conversions per second in the long run, {@code 0} for no limit.
+     */
+    private final double maxPerSecond;
+
+    /**
+     * Maximum number of sampled conversions in a burst, after a time without conversions.
+     */
+    private final int burst;
+
+    /**
+     * Whether each class of converted objects has a token bucket of its own, otherwise all share one.
+     */
+    private final boolean perClass;
+
+    /**
+     * Nanoseconds it takes to refill a single token, {@code 0} for no limit.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long interval;
+
+    /**
+     * Nanoseconds the token bucket may run ahead of time, i.e. the time to refill all but one token of a burst.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long tolerance;
+
+    /**
+     * The token bucket shared by all classes.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Bucket bucket = new Bucket();
+
+    /**
+     * The token buckets per class, if each class has a token bucket of its own.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ClassValue<Bucket> buckets = new ClassValue<>() {
+        @Override
+        protected Bucket computeValue(Class<?> type) {
+            return new Bucket();
+        }
+    };
+
+    /**
+     * Number of sampled conversions.
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongAdder rendered = new LongAdder();
+
+    /**
+     * Number of summarized conversions.
+     */
+    @Getter(AccessLevel.NONE)
+    private final LongAdder summarized = new LongAdder();
+
+    /**
+     * Creates a sampler.
+     *
+     * @param renderer The renderer converting sampled objects, {@code null} for {@link ToStringRenderer#DEFAULT}.
+     * @param sampleRate One in how many conversions is sampled, values below {@code 1} sample all.
+     * @param maxPerSecond Maximum number of sampled conversions per second, {@code 0} for no limit.
+     * @param burst Maximum number of sampled conversions in a burst, {@code 0} for as many as per second.
+     * @param perClass Whether each class of converted objects has a token bucket of its own.
+     */
+    @Builder
+    private ToStringSampler(ToStringRenderer renderer, int sampleRate, double maxPerSecond, int burst, boolean perClass) {
+        this.renderer = renderer == null ? ToStringRenderer.DEFAULT : renderer;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.maxPerSecond = Math.max(maxPerSecond, 0);
+        this.burst = burst > 0 ? burst : (int) Math.max(Math.ceil(this.maxPerSecond), 1);
+        this.perClass = perClass;
+        this.interval = this.maxPerSecond > 0 ? Math.max((long) (1_000_000_000L / this.maxPerSecond), 1) : 0;
+        this.tolerance = interval * (this.burst - 1);
+    }
+
+    /**
+     * Generates a string representation of an object if sampled, otherwise a summary.
+     *
+     * @param object The object to be represented as a string.
+     * @return String representation or summary of the object, or {@code null} if it can not be created.
+     */
+    public String render(Object object) {
+        if (isSampled(object)) {
+            rendered.increment();
+            return renderer.render(object);
+        }
+
+        summarized.increment();
+        return summarize(object);
+    }
+
+    /**
+     * Defers the string representation of an object until it is needed.
+     * Whether the object is sampled is decided only then, so handles that are never written do not use up any tokens.
+     *
+     * @param object The object to be represented as a string.
+     * @return Handle converting or summarizing the object with this sampler on first use.
+     */
+    public ToStringHandle lazy(Object object) {
+        return new ToStringHandle(this, object);
+    }
+
+    /**
+     * Get the number of conversions that have been sampled.
+     *
+     * @return The number of sampled conversions.
+     */
+    public long getRendered() {
+        return rendered.sum();
+    }
+
+    /**
+     * Get the number of conversions that have been summarized.
+     *
+     * @return The number of summarized conversions.
+     */
+    public long getSummarized() {
+        return summarized.sum();
+    }
+
+    /**
+     * Generates a summary of an object in constant time, without visiting any fields or elements.
+     * The summary consists of the simple class name, the identity hash code and, for collections, maps and arrays, the size.
+     *
+     * @param object The object to be summarized.
+     * @return The summary, like {@code ArrayList@1b6d3586[3]} or {@code Person@4554617c[...]}.
+     */
+    public static String summarize(Object object) {
+        if (object == null) {
+            return ToString.TS_EXPR_NULL;
+        }
+
+        ClassMetadata metadata = ClassMetadata.of(object.getClass());
+        StringBuilder summary = new StringBuilder(metadata.getSimpleName().length() + 24);
+
+        summary.append(metadata.getSimpleName());
+        summary.append(TS_IDENTITY);
+        summary.append(Integer.toHexString(System.identityHashCode(object)));
+        summary.append('[');
+
+        if (object instanceof Collection<?> collection) {
+            summary.append(collection.size());
+        } else if (object instanceof Map<?, ?> map) {
+            summary.append(map.size());
+        } else if (object.getClass().isArray()) {
+            summary.append(Array.getLength(object));
+        } else {
+            summary.append(ToString.TS_EXPR_OMITTED);
+        }
+
+        return summary.append(']').toString();
+    }
+
+    /**
+     * Decide whether a conversion is sampled, taking a token from the token bucket of the object if it passes sampling.
+     *
+     * @param object The object to be represented as a string.
+     * @return Whether the object is to be converted.
+     */
+    private boolean isSampled(Object object) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return false;
+        }
+
+        if (interval == 0) {
+            return true;
+        }
+
+        Bucket target = perClass && object != null ? buckets.get(object.getClass()) : bucket;
+        return target.tryAcquire(System.nanoTime(), interval, tolerance);
+    }
+
+    /**
+     * Token bucket kept as the time at which it will be full again, as in the generic cell rate algorithm.
+     * Taking a token advances this time by the interval of a token, which must not run ahead of the current time
+     * by more than the tolerance of a burst.
+     */
+    private static final class Bucket {
+
+        /**
+         * The time in nanoseconds at which the bucket will be full again.
+         */
+        private final AtomicLong full = new AtomicLong(System.nanoTime());
+
+        /**
+         * Take a token if there is any.
+         *
+         * @param now The current time in nanoseconds.
+         * @param interval Nanoseconds it takes to refill a single token.
+         * @param tolerance Nanoseconds the bucket may run ahead of time.
+         * @return Whether a token has been taken.
+         */
+        private boolean tryAcquire(long now, long interval, long tolerance) {
+            while (true) {
+                long current = full.get();
+                long start = current - now > 0 ? current : now;
+
+                if (start - now > tolerance) {
+                    return false;
+                }
+
+                if (full.compareAndSet(current, start + interval)) {
+                    return true;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package de.tilokowalski.util;
+
+import java.util.List;
+
+/**
+ * Provides the fields of a class and reads their values without reflection.
+ * Implementations are usually generated at build time for classes annotated with {@link ToStringGenerate}
+ * and registered as service, so they are picked up automatically. They can also be registered manually
+ * by {@link ToString#registerTemplate(ToStringTemplate)}.
+ *
+ * @param <T> The class described by the template.
+ */
+public interface ToStringTemplate<T> {
+
+    /**
+     * Get the class described by this template.
+     * The template is only used for objects of exactly this class, not for subclasses.
+     *
+     * @return The class described by this template.
+     */
+    Class<T> getType();
+
+    /**
+     * Get the fields to be included in the string representation, ordered from the class itself to its topmost superclass.
+     * Ignored, static and final fields must not be contained.
+     *
+     * @return The included fields.
+     */
+    List<Field> getFields();
+
+    /**
+     * Get the value of a field, boxing primitive values.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    Object get(T object, int index);
+
+    /**
+     * Get the value of an {@code int}, {@code short} or {@code byte} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default int getInt(T object, int index) {
+        return ((Number) get(object, index)).intValue();
+    }
+
+    /**
+     * Get the value of a {@code long} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default long getLong(T object, int index) {
+        return (Long) get(object, index);
+    }
+
+    /**
+     * Get the value of a {@code double} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default double getDouble(T object, int index) {
+        return (Double) get(object, index);
+    }
+
+    /**
+     * Get the value of a {@code float} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default float getFloat(T object, int index) {
+        return (Float) get(object, index);
+    }
+
+    /**
+     * Get the value of a {@code boolean} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default boolean getBoolean(T object, int index) {
+        return (Boolean) get(object, index);
+    }
+
+    /**
+     * Get the value of a {@code char} field.
+     *
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field in {@link #getFields()}.
+     * @return The value of the field.
+     */
+    default char getChar(T object, int index) {
+        return (Character) get(object, index);
+    }
+
+    /**
+     * Description of a field provided by a template.
+     *
+     * @param name The name of the field as it appears in the string representation.
+     * @param type The declared type of the field.
+     * @param depth Level of class hierarchy the field is declared in, starting with {@code 0} for the class itself.
+     * @param dontResolve Whether the field is annotated with {@link ToStringDontResolve}.
+     */
+    record Field(String name, Class<?> type, int depth, boolean dontResolve) {
+
+    }
+
+}
@@ -0,0 +1,420 @@
+package de.tilokowalski.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Warm-up of the caches used by conversions, so the first conversion of a class does not pay for walking its hierarchy,
+ * making its fields accessible, reading its annotations and compiling its layout.
+ * Classes can be warmed up by name, by package, or from a class index recorded during a training run: every class whose
+ * metadata is resolved, i.e. every class converted so far, is remembered by name, and {@link #writeIndex(Path)} writes
+ * these names to a small text file, which {@link #replay(Path)} warms up on the next start before any traffic arrives.
+ * Each warm-up also covers the classes of the fields of the warmed classes, transitively. The first warm-up additionally
+ * converts an object of its own once in each format, which initializes the classes used by every conversion, so the first
+ * conversion after a warm-up initializes no further class.
+ */
+public final class ToStringWarmup {
+
+    /**
+     * First line of a class index, lines starting with {@code #} are ignored when replaying it.
+     */
+    private static final String TS_INDEX_HEADER = "# tostring-util class index";
+
+    /**
+     * Suffix of class files.
+     */
+    private static final String TS_CLASS_SUFFIX = ".class";
+
+    /**
+     * Whether the classes used by every conversion have been initialized.
+     */
+    private static volatile boolean primed;
+
+    /**
+     * Utility class, not to be instantiated.
+     */
+    private ToStringWarmup() {
+    }
+
+    /**
+     * Warm up classes and the classes of their fields.
+     * Classes written by a formatter, containers and interfaces are skipped, as they have no fields to prepare.
+     *
+     * @param types The classes to warm up.
+     * @return The number of classes whose fields have been prepared, including the classes of fields.
+     */
+    public static int warmUp(Class<?>... types) {
+        return warmUp(Arrays.asList(types));
+    }
+
+    /**
+     * Warm up classes and the classes of their fields.
+     * Classes written by a formatter, containers and interfaces are skipped, as they have no fields to prepare.
+     *
+     * @param types The classes to warm up.
+     * @return The number of classes whose fields have been prepared, including the classes of fields.
+     */
+    public static int warmUp(Collection<Class<?>> types) {
+        Set<Class<?>> seen = new HashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>(types);
+        boolean compiled = ToString.getEngine() == ToStringEngine.COMPILED;
+        int warmed = 0;
+
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.pop();
+
+            if (type.isPrimitive() || !seen.add(type) || FormatterRegistry.find(type) != null) {
+                continue;
+            }
+
+            ClassMetadata metadata = ClassMetadata.of(type);
+
+            if (metadata.getCategory() != TypeCategory.OBJECT) {
+                continue;
+            }
+
+            warmed++;
+
+            if (compiled) {
+                metadata.getLayout(ToString.TS_DELIMITER_SL, ToString.TS_LEVEL_DEEP);
+                metadata.getLayout(ToString.TS_DELIMITER_ML, ToString.TS_LEVEL_DEEP);
+            }
+
+            for (int i = 0, count = metadata.getFieldCount(ToString.TS_LEVEL_DEEP); i < count; i++) {
+                Class<?> fieldType = metadata.getField(i).getType();
+
+                if (fieldType.isArray()) {
+                    fieldType = fieldType.getComponentType();
+                }
+
+                if (!fieldType.isInterface() && !Modifier.isAbstract(fieldType.getModifiers())) {
+                    pending.push(fieldType);
+                }
+            }
+        }
+
+        prime();
+
+        return warmed;
+    }
+
+    /**
+     * Initialize the classes used by every conversion once, i.e. the renderers, sinks and traversals, the formatters,
+     * the metrics and the check for flight recordings, and link the method handles reading fields of each primitive type,
+     * by converting an object of this class in each format of {@link ToString}.
+     */
+    private static void prime() {
+        if (primed) {
+            return;
+        }
+
+        primed = true;
+
+        StringBuilder result = new StringBuilder();
+        Probe probe = new Probe();
+
+        ToStringRenderer.DEFAULT.renderTo(result, probe);
+        ToStringRenderer.DUMP.renderTo(result, probe);
+        ToStringRenderer.JSON.renderTo(result, probe);
+    }
+
+    /**
+     * Warm up all classes of packages and their subpackages, found by the context class loader in directories and jar files.
+     * The classes are loaded without being initialized.
+     *
+     * @param packageNames The names of the packages, like {@code com.example.model}.
+     * @return The number of classes whose fields have been prepared, including the classes of fields.
+     * @throws IOException When a directory or jar file can not be read.
+     */
+    public static int warmUpPackages(String... packageNames) throws IOException {
+        ClassLoader loader = getClassLoader();
+        List<Class<?>> types = new ArrayList<>();
+
+        for (String packageName : packageNames) {
+            for (String name : findClassNames(loader, packageName)) {
+                Class<?> type = load(loader, name);
+
+                if (type != null) {
+                    types.add(type);
+                }
+            }
+        }
+
+        return warmUp(types);
+    }
+
+    /**
+     * Write the names of all classes converted so far to a class index, to be replayed on the next start.
+     * The file is replaced atomically, so a concurrent replay never reads a partial index.
+     *
+     * @param index The file to write the class index to.
+     * @throws IOException When the file can not be written.
+     */
+    public static void writeIndex(Path index) throws IOException {
+        List<String> lines = new ArrayList<>(ClassMetadata.getResolvedNames());
+        lines.remove(Probe.class.getName());
+        lines.sort(null);
+        lines.add(0, TS_INDEX_HEADER);
+
+        Path directory = index.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, index.getFileName().toString(), ".tmp");
+
+        try {
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Warm up all classes of a class index written by {@link #writeIndex(Path)}.
+     * Classes that can not be loaded anymore, e.g. because they have been removed since the index was written, are skipped.
+     *
+     * @param index The class index.
+     * @return The number of classes warmed up, {@code 0} if the class index does not exist.
+     * @throws IOException When the class index can not be read.
+     */
+    public static int replay(Path index) throws IOException {
+        ClassLoader loader = getClassLoader();
+        List<Class<?>> types = new ArrayList<>();
+
+        try (Stream<String> lines = Files.lines(index, StandardCharsets.UTF_8)) {
+            lines.map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(name -> load(loader, name))
+                .filter(type -> type != null)
+                .forEach(types::add);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+
+        return warmUp(types);
+    }
+
+    /**
+     * Warm up classes and the classes of their fields on a background thread.
+     *
+     * @param types The classes to warm up.
+     * @return A future completed with the number of classes warmed up.
+     */
+    public static CompletableFuture<Integer> warmUpInBackground(Class<?>... types) {
+        return inBackground(() -> warmUp(types));
+    }
+
+    /**
+     * Warm up all classes of a class index on a background thread.
+     *
+     * @param index The class index.
+     * @return A future completed with the number of classes warmed up, or completed exceptionally if the class index can not be read.
+     */
+    public static CompletableFuture<Integer> replayInBackground(Path index) {
+        return inBackground(() -> {
+            try {
+                return replay(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Run a warm-up on a daemon thread of minimum priority, so it neither delays the start nor keeps the application alive.
+     *
+     * @param warmUp The warm-up to run.
+     * @return A future completed with the number of classes warmed up.
+     */
+    private static CompletableFuture<Integer> inBackground(Supplier<Integer> warmUp) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                future.complete(warmUp.get());
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        }, "tostring-warmup");
+
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+
+        return future;
+    }
+
+    /**
+     * Find the names of all classes of a package and its subpackages.
+     *
+     * @param loader The class loader to search.
+     * @param packageName The name of the package.
+     * @return The names of the classes.
+     * @throws IOException When a directory or jar file can not be read.
+     */
+    private static List<String> findClassNames(ClassLoader loader, String packageName) throws IOException {
+        String path = packageName.replace('.', '/');
+        List<String> names = new ArrayList<>();
+        Enumeration<URL> resources = loader.getResources(path);
+
+        while (resources.hasMoreElements()) {
+            URL resource = resources.nextElement();
+
+            if ("jar".equals(resource.getProtocol())) {
+                try (JarFile jar = ((JarURLConnection) resource.openConnection()).getJarFile()) {
+                    Enumeration<JarEntry> entries = jar.entries();
+
+                    while (entries.hasMoreElements()) {
+                        String entry = entries.nextElement().getName();
+
+                        if (entry.startsWith(path + "/")) {
+                            addClassName(names, entry);
+                        }
+                    }
+                }
+            } else if ("file".equals(resource.getProtocol())) {
+                Path directory;
+
+                try {
+                    directory = Path.of(resource.toURI());
+                } catch (URISyntaxException e) {
+                    throw new IOException("package directory could not be resolved: " + resource, e);
+                }
+
+                try (Stream<Path> files = Files.walk(directory)) {
+                    files.forEach(file -> addClassName(names, path + "/" + directory.relativize(file).toString().replace(File.separatorChar, '/')));
+                }
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Add the name of a class if a path denotes a class file, skipping descriptors of modules and packages.
+     *
+     * @param names The names of the classes.
+     * @param path The path of the file relative to the root of the class path.
+     */
+    private static void addClassName(List<String> names, String path) {
+        if (path.endsWith(TS_CLASS_SUFFIX) && !path.endsWith("module-info.class") && !path.endsWith("package-info.class")) {
+            names.add(path.substring(0, path.length() - TS_CLASS_SUFFIX.length()).replace('/', '.'));
+        }
+    }
+
+    /**
+     * Load a class without initializing it.
+     *
+     * @param loader The class loader to load the class with.
+     * @param name The name of the class.
+     * @return The class, or {@code null} if it can not be loaded.
+     */
+    private static Class<?> load(ClassLoader loader, String name) {
+        try {
+            return Class.forName(name, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the class loader to load warmed up classes with.
+     *
+     * @return The context class loader, or the class loader of this library if there is none.
+     */
+    private static ClassLoader getClassLoader() {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        return contextClassLoader != null ? contextClassLoader : ToStringWarmup.class.getClassLoader();
+    }
+
+    /**
+     * Object converted to initialize the classes used by every conversion, with a field of each primitive type,
+     * a string, a boxed number, a nested object and a list.
+     */
+    @SuppressWarnings("unused")
+    private static final class Probe {
+
+        /**
+         * An {@code int} field.
+         */
+        private int intValue = 1;
+
+        /**
+         * A {@code long} field.
+         */
+        private long longValue = 1L;
+
+        /**
+         * A {@code boolean} field.
+         */
+        private boolean booleanValue = true;
+
+        /**
+         * A {@code char} field.
+         */
+        private char charValue = 'c';
+
+        /**
+         * A {@code double} field.
+         */
+        private double doubleValue = 1.0;
+
+        /**
+         * A {@code float} field.
+         */
+        private float floatValue = 1.0f;
+
+        /**
+         * A {@code short} field.
+         */
+        private short shortValue = 1;
+
+        /**
+         * A {@code byte} field.
+         */
+        private byte byteValue = 1;
+
+        /**
+         * A string field.
+         */
+        private String text = "text";
+
+        /**
+         * A boxed number field.
+         */
+        private Integer number = 1;
+
+        /**
+         * A nested object without fields.
+         */
+        private Object nested = new Object();
+
+        /**
+         * A list field.
+         */
+        private List<String> elements = List.of("element");
+
+    }
+
+}
@@ -0,0 +1,1423 @@
+package de.tilokowalski.util;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Traverses an object graph and writes its string representation to a sink.
+ * Nested objects are not resolved by recursion but by an explicit stack of frames on the heap,
+ * so arbitrarily deep object graphs can be converted with constant use of the native stack.
+ * Frames are reused, so descending into a nested object allocates nothing but the iterators of collections.
+ * A traversal may be reused by later conversions on the same sink, as long as they do not overlap.
+ * Large containers may be split into chunks, which are written by separate traversals in parallel and joined in order.
+ * The traversal is limited by a {@link ToStringBudget}, so it never visits more of the graph than the budget allows.
+ * For the JSON formats, the graph is written by a {@link JsonTraversal} instead, which is counted and limited by this traversal.
+ */
+final class Traversal {
+
+    /**
+     * Constant representing the opening parenthesis of the objects content.
+     */
+    private static final char TS_PARANTHESIS_OPEN = '[';
+
+    /**
+     * Constant representing the closing parenthesis of the objects content.
+     */
+    private static final char TS_PARANTHESIS_CLOSE = ']';
+
+    /**
+     * Constant representing the quotation mark, used to encase string values.
+     */
+    private static final char TS_PARANTHESIS_STRING = '\"';
+
+    /**
+     * Constant representing the equal sign between field name and value.
+     */
+    private static final char TS_EQUALS = '=';
+
+    /**
+     * Constant written instead of a nested object that could not be converted.
+     */
+    private static final String TS_EXPR_FAILED = "null";
+
+    /**
+     * Digits of the hexadecimal format of {@code byte[]} arrays.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Maximum number of cached representations captured at the same time, i.e. of cacheable objects nested in each other
+     * that are written to the cache. Objects nested deeper are written without being cached, which bounds the copies of
+     * the output held by the captured representations of deeply nested objects.
+     */
+    private static final int MAX_OPEN_FRAGMENTS = 8;
+
+    /**
+     * Whether the runtime contains the JDK Flight Recorder, otherwise {@link RenderEvent} and its super class can not be loaded,
+     * so the flight recorder is only touched through {@link EventProbe} after this check.
+     */
+    private static final boolean RECORDABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    /**
+     * Maximum capacity of the buffer of captured representations that is kept for reuse by later conversions.
+     */
+    private static final int RETAINED_CAPTURE = 8192;
+
+    /**
+     * Digits of the Base64 format of {@code byte[]} arrays.
+     */
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /**
+     * The sink to write to, limited to the maximum length of the budget, replaced by a counting sink while a conversion is measured.
+     */
+    private RenderSink result;
+
+    /**
+     * The sink to write to without limit, used to write the marker of omitted content.
+     */
+    private RenderSink target;
+
+    /**
+     * Maximum number of characters written per conversion.
+     */
+    private final int maxLength;
+
+    /**
+     * State of the conversion, replaced by a forked context while the representation of a cacheable object is captured.
+     */
+    private RenderContext context;
+
+    /**
+     * The configuration of the conversion.
+     */
+    private final ToStringRenderer renderer;
+
+    /**
+     * The character to be used as delimiter between fields.
+     */
+    private final char delimiter;
+
+    /**
+     * Level of class hierarchy to be explored.
+     */
+    private final int level;
+
+    /**
+     * Whether the representation is multi-line and indented.
+     */
+    private final boolean multiLine;
+
+    /**
+     * Whether the fields are appended by compiled layouts, as configured when the conversion started.
+     */
+    private boolean compiled;
+
+    /**
+     * Format in which resolved {@code byte[]} arrays are written, as configured when the conversion started.
+     */
+    private ToStringByteFormat byteFormat;
+
+    /**
+     * Maximum depth of nested objects below the converted object.
+     */
+    private final int maxDepth;
+
+    /**
+     * Maximum number of elements written per container.
+     */
+    private final int maxElements;
+
+    /**
+     * Maximum number of objects and containers visited in total.
+     */
+    private final int maxNodes;
+
+    /**
+     * Number of objects and containers visited so far.
+     */
+    private int nodes;
+
+    /**
+     * Maximum depth of nested objects below the converted object reached so far.
+     */
+    private int deepest;
+
+    /**
+     * Whether any part of the object graph has been omitted because of the budget.
+     */
+    private boolean truncated;
+
+    /**
+     * Number of objects that could not be converted so far.
+     */
+    private int errors;
+
+    /**
+     * The depth of the converted object, from which the depth of nested objects is measured.
+     */
+    private int baseNesting;
+
+    /**
+     * The pool writing chunks of large containers in parallel, {@code null} if containers are written sequentially.
+     */
+    private final ForkJoinPool parallelPool;
+
+    /**
+     * Minimum number of elements of a container to be written in parallel.
+     */
+    private final int parallelThreshold;
+
+    /**
+     * Whether objects are identified on first appearance and written as back-references when referenced again.
+     */
+    private final boolean deduplicate;
+
+    /**
+     * The cache of immutable objects, {@code null} if objects are always traversed.
+     */
+    private final RenderCache cache;
+
+    /**
+     * The root of the projection selecting the fields to write, {@code null} if all fields are written.
+     */
+    private final ToStringProjection.Node projection;
+
+    /**
+     * The traversal writing JSON instead, {@code null} if the string representation is written.
+     */
+    private final JsonTraversal json;
+
+    /**
+     * The stack of frames, of which the first {@link #depth} are in use.
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /**
+     * Number of frames currently on the stack.
+     */
+    private int depth;
+
+    /**
+     * Copy of everything written while any representation is captured for the cache, {@code null} if not yet needed.
+     */
+    private StringBuilder captured;
+
+    /**
+     * The sink written to before capturing started, {@code null} while no representation is captured.
+     */
+    private RenderSink uncaptured;
+
+    /**
+     * Number of representations currently captured for the cache.
+     */
+    private int openFragments;
+
+    /**
+     * Creates a traversal writing to a given sink.
+     *
+     * @param result The sink to write to.
+     * @param context State of the conversion.
+     * @param renderer The configuration of the conversion.
+     */
+    Traversal(RenderSink result, RenderContext context, ToStringRenderer renderer) {
+        ToStringBudget budget = renderer.getBudget();
+
+        this.maxLength = budget.getMaxLength();
+        this.result = maxLength == Integer.MAX_VALUE ? result : RenderSink.limit(result, maxLength);
+        this.target = result;
+        this.context = context;
+        this.renderer = renderer;
+        this.delimiter = renderer.getDelimiter();
+        this.level = renderer.getLevel();
+        this.multiLine = delimiter == ToString.TS_DELIMITER_ML;
+        this.maxDepth = budget.getMaxDepth();
+        this.maxElements = budget.getMaxElements();
+        this.maxNodes = budget.getMaxNodes();
+        this.deduplicate = renderer.isDeduplicate();
+        this.parallelPool = renderer.isParallel() && !budget.isLimited() && !deduplicate ? renderer.getParallelPool() : null;
+        this.parallelThreshold = Math.max(renderer.getParallelThreshold(), 1);
+        this.cache = budget.isLimited() || deduplicate ? null : renderer.getCache();
+        this.projection = renderer.getProjection() == null ? null : renderer.getProjection().getRoot();
+        this.json = renderer.getFormat() == ToStringFormat.TEXT ? null : new JsonTraversal(this, context, renderer);
+    }
+
+    /**
+     * Creates a traversal writing a chunk of a container or a cached object for another traversal, with the same configuration.
+     *
+     * @param result The sink to write to.
+     * @param context State of the conversion of the chunk or object.
+     * @param parent The traversal writing the container.
+     */
+    private Traversal(RenderSink result, RenderContext context, Traversal parent) {
+        this(result, context, parent.renderer);
+
+        this.compiled = parent.compiled;
+        this.byteFormat = parent.byteFormat;
+        this.baseNesting = parent.baseNesting;
+    }
+
+    /**
+     * Write the string representation of an object and all nested objects.
+     * Errors of nested objects are reported and {@code null} is written instead of them,
+     * errors of the object itself abort the conversion.
+     * When the budget is exhausted, the conversion stops right away and {@link ToString#TS_EXPR_OMITTED} is written.
+     * The conversion is measured if the metrics or the flight recorder event are enabled.
+     *
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the object, used for indentation.
+     * @throws Exception When the object can not be converted.
+     */
+    void render(Object object, int nesting) throws Exception {
+        boolean recorded = RECORDABLE && EventProbe.isEnabled();
+
+        if (!recorded && !ToStringMetrics.isEnabled()) {
+            traverse(object, nesting);
+            return;
+        }
+
+        RenderEvent event = recorded ? new RenderEvent() : null;
+
+        RenderSink unmeasuredResult = result;
+        RenderSink unmeasuredTarget = target;
+        RenderSink.CountingSink counter = RenderSink.count(unmeasuredTarget);
+        long start = System.nanoTime();
+
+        target = counter;
+        result = maxLength == Integer.MAX_VALUE ? counter : RenderSink.limit(counter, maxLength);
+
+        if (recorded) {
+            event.begin();
+        }
+
+        try {
+            traverse(object, nesting);
+        } catch (Exception e) {
+            errors++;
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            Class<?> type = object == null ? null : object.getClass();
+
+            result = unmeasuredResult;
+            target = unmeasuredTarget;
+
+            if (recorded) {
+                event.end();
+
+                if (event.shouldCommit()) {
+                    event.rootClass = type;
+                    event.outputLength = counter.getCount();
+                    event.nodes = nodes;
+                    event.maxDepth = deepest;
+                    event.truncated = truncated;
+                    event.errors = errors;
+                    event.commit();
+                }
+            }
+
+            if (ToStringMetrics.isEnabled()) {
+                ToStringMetrics.record(type, duration, counter.getCount(), nodes, deepest, truncated, errors);
+            }
+        }
+    }
+
+    /**
+     * Write the string representation of an object and all nested objects without measuring the conversion.
+     *
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the object, used for indentation.
+     * @throws Exception When the object can not be converted.
+     */
+    private void traverse(Object object, int nesting) throws Exception {
+        boolean resolve = renderer.isResolve();
+        int base = depth;
+
+        baseNesting = nesting;
+        nodes = 0;
+        deepest = 0;
+        truncated = false;
+        errors = 0;
+        compiled = ToString.getEngine() == ToStringEngine.COMPILED;
+        byteFormat = ToString.getByteFormat();
+        result.reset();
+
+        try {
+            if (json != null) {
+                json.render(result, object, nesting);
+                return;
+            }
+
+            if (object != null) {
+                object = appendValue(object);
+
+                if (object == null) {
+                    return;
+                }
+            }
+
+            open(object, nesting, resolve, projection);
+            drain(base, false);
+        } catch (BudgetExhaustedException e) {
+            markTruncated();
+            target.append(ToString.TS_EXPR_OMITTED);
+        } finally {
+            while (depth > base) {
+                pop(false);
+            }
+        }
+    }
+
+    /**
+     * Write the frames on the stack until it is back at a given depth.
+     * Errors of nested objects are reported and {@code null} is written instead of them.
+     *
+     * @param base The depth of the stack to return to.
+     * @param nested Whether the frame right above the base belongs to a nested object, otherwise its errors are thrown.
+     * @throws Exception When the object of the frame right above the base can not be converted.
+     */
+    private void drain(int base, boolean nested) throws Exception {
+        while (depth > base) {
+            try {
+                step(frames.get(depth - 1));
+            } catch (UncheckedIOException | BufferOverflowException | BudgetExhaustedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (!nested && depth - 1 == base) {
+                    throw e;
+                }
+
+                reportError(e);
+                pop(false);
+                result.append(TS_EXPR_FAILED);
+            }
+        }
+    }
+
+    /**
+     * Start writing an object and push a frame if its fields or elements have to be written.
+     *
+     * @param object The object to be represented as a string.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param projection The node of the projection applying to the object, {@code null} if all fields are written.
+     * @throws Exception When the object can not be converted.
+     */
+    private void open(Object object, int nesting, boolean resolve, ToStringProjection.Node projection) throws Exception {
+        countNode(nesting);
+
+        ClassMetadata metadata = ClassMetadata.of(object.getClass());
+
+        if (metadata.getCategory() == TypeCategory.OBJECT) {
+            metadata.validate(level);
+        }
+
+        if (cache != null && projection == null && metadata.isCacheable() && appendCached(object, metadata, nesting, resolve)) {
+            return;
+        }
+
+        write(object, metadata, nesting, resolve, projection);
+    }
+
+    /**
+     * Write an immutable object from the cache, or write it to the cache first.
+     * A representation is only cached if it does not depend on any object written before, e.g. as circular reference,
+     * and only reused if neither the object nor any of its nested objects is known to the context.
+     * All objects resolved by it are then marked as resolved, so the output is the same as if the object was traversed.
+     * On a miss, the object is written on the stack of this traversal like any other object, while everything written
+     * is also copied, and it is put into the cache when its frame has been written completely, see {@link #endFragment}.
+     *
+     * @param object The object to be represented as a string.
+     * @param metadata The metadata of the class of the object.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @return Whether the object has been written or started, otherwise it has to be written without the cache.
+     * @throws Exception When the object can not be converted.
+     */
+    private boolean appendCached(Object object, ClassMetadata metadata, int nesting, boolean resolve) throws Exception {
+        if (context.isResolved(object)) {
+            return false;
+        }
+
+        RenderCache.Fragment fragment = cache.find(object);
+
+        if (fragment != null && fragment.matches(nesting, resolve, byteFormat) && !fragment.isAnyResolved(context)) {
+            cache.recordHit();
+            fragment.markResolved(context);
+
+            if (fragment.resolvedSelf()) {
+                context.markResolved(object);
+            }
+
+            result.append(fragment.text());
+            return true;
+        }
+
+        cache.recordMiss();
+
+        if (openFragments == MAX_OPEN_FRAGMENTS) {
+            return false;
+        }
+
+        RenderContext outer = context;
+        int start = beginFragment();
+        int frameDepth = depth;
+
+        try {
+            write(object, metadata, nesting, resolve, null);
+        } catch (Exception e) {
+            endFragment(object, nesting, resolve, outer, start, false);
+            throw e;
+        }
+
+        if (depth > frameDepth) {
+            Frame frame = frames.get(frameDepth);
+            frame.fragmentContext = outer;
+            frame.fragmentStart = start;
+        } else {
+            endFragment(object, nesting, resolve, outer, start, true);
+        }
+
+        return true;
+    }
+
+    /**
+     * Start capturing the representation of a cacheable object, with a context forked from the current one,
+     * which records every object the representation depends on.
+     *
+     * @return The position in the captured output at which the representation starts.
+     */
+    private int beginFragment() {
+        if (openFragments++ == 0) {
+            if (captured == null) {
+                captured = new StringBuilder();
+            }
+
+            uncaptured = result;
+            result = RenderSink.copy(result, captured);
+        }
+
+        context = context.fork();
+        return captured.length();
+    }
+
+    /**
+     * Stop capturing the representation of a cacheable object, and put it into the cache if it has been written completely
+     * and does not depend on any object written before it.
+     *
+     * @param object The cacheable object.
+     * @param nesting The depth the object has been written at.
+     * @param resolve Whether nested objects have been resolved.
+     * @param outer The context before capturing the representation started.
+     * @param start The position in the captured output at which the representation starts.
+     * @param completed Whether the object has been written completely, otherwise it is not cached.
+     */
+    private void endFragment(Object object, int nesting, boolean resolve, RenderContext outer, int start, boolean completed) {
+        RenderContext forked = context;
+
+        context = outer;
+        context.join(forked);
+
+        if (completed && !forked.isInherited()) {
+            cache.put(object, new RenderCache.Fragment(captured.substring(start), nesting, resolve, byteFormat,
+                RenderCache.weakly(forked.getVisited(object)), RenderCache.weakly(forked.getResolved(object)), forked.isMarkedResolved(object)));
+        }
+
+        if (--openFragments == 0) {
+            result = uncaptured;
+            uncaptured = null;
+
+            if (captured.capacity() > RETAINED_CAPTURE) {
+                captured = null;
+            } else {
+                captured.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Write the name of an object and push a frame if its fields or elements have to be written.
+     *
+     * @param object The object to be represented as a string.
+     * @param metadata The metadata of the class of the object.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param projection The node of the projection applying to the object, {@code null} if all fields are written.
+     * @throws Exception When the object can not be converted.
+     */
+    private void write(Object object, ClassMetadata metadata, int nesting, boolean resolve, ToStringProjection.Node projection) throws Exception {
+        result.append(metadata.getSimpleName());
+
+        int id = deduplicate ? appendIdentity(object, metadata, nesting, resolve, projection) : 0;
+
+        if (id < 0) {
+            return;
+        }
+
+        result.append(TS_PARANTHESIS_OPEN);
+
+        if (id == 0 && context.isResolved(object)) {
+            result.append(ToString.TS_EXPR_CIRC_REF);
+            result.append(TS_PARANTHESIS_CLOSE);
+            return;
+        }
+
+        if (nesting - baseNesting > maxDepth) {
+            markTruncated();
+            result.append(ToString.TS_EXPR_OMITTED);
+            result.append(TS_PARANTHESIS_CLOSE);
+            return;
+        }
+
+        if (metadata.getCategory() == TypeCategory.ARRAY && object.getClass().getComponentType().isPrimitive()) {
+            appendPrimitiveArray(object, nesting, resolve);
+            return;
+        }
+
+        if (metadata.getCategory().isContainer()) {
+            Collection<?> collection;
+            boolean entries = object instanceof Map<?, ?>;
+
+            if (object instanceof Collection<?> objectCollection) {
+                collection = objectCollection;
+            } else if (object instanceof Map<?, ?> map) {
+                collection = map.entrySet();
+            } else {
+                collection = Arrays.asList((Object[]) object);
+            }
+
+            if (collection.isEmpty() || !resolve && projection == null) {
+                result.append(collection.size());
+                result.append(TS_PARANTHESIS_CLOSE);
+                return;
+            }
+
+            context.enterContainer(object);
+
+            if (parallelPool != null && projection == null && collection.size() >= parallelThreshold) {
+                Object[] elements = collection.toArray();
+
+                try {
+                    appendParallel(elements, elements.length, nesting, resolve, entries);
+                } finally {
+                    context.exitContainer(object);
+                }
+
+                renderer.appendSeparator(result, nesting - 1);
+                result.append(TS_PARANTHESIS_CLOSE);
+                return;
+            }
+
+            push(object, null, null, collection.iterator(), collection.size(), nesting, resolve,
+                projection == null ? null : projection.getElements(), null, entries);
+            return;
+        }
+
+        if (multiLine) {
+            result.append(delimiter);
+        }
+
+        int fieldCount = getFieldCount(metadata, nesting, resolve, projection);
+
+        if (fieldCount > 0 && !deduplicate) {
+            context.markResolved(object);
+        }
+
+        ToStringProjection.Plan plan = projection == null ? null : projection.getPlan(metadata.getType());
+        CompiledLayout layout = compiled && plan == null ? metadata.getLayout(delimiter, level) : null;
+        push(object, metadata, layout, null, fieldCount, nesting, resolve, projection, plan, false);
+    }
+
+    /**
+     * Write the identifier of an object on its first appearance, or a back-reference to it when it appears again.
+     * Back-references to objects currently being resolved, i.e. ancestors of the object referencing them,
+     * are written with {@link ToString#TS_EXPR_CIRC_REF} in front, to distinguish cycles from shared objects.
+     * Only objects whose fields are resolved are identified, containers are written again on each appearance.
+     *
+     * @param object The object to be represented as a string.
+     * @param metadata The metadata of the class of the object.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param projection The node of the projection applying to the object, {@code null} if all fields are written.
+     * @return The identifier given to the object, {@code -1} if a back-reference has been written, or {@code 0} if not identified.
+     */
+    private int appendIdentity(Object object, ClassMetadata metadata, int nesting, boolean resolve, ToStringProjection.Node projection) {
+        int id = context.getId(object);
+
+        if (id > 0) {
+            result.append(TS_PARANTHESIS_OPEN);
+
+            if (context.isResolving(object)) {
+                result.append(ToString.TS_EXPR_CIRC_REF);
+            }
+
+            result.append(ToString.TS_EXPR_BACK_REF);
+            result.append(id);
+            result.append(TS_PARANTHESIS_CLOSE);
+            return -1;
+        }
+
+        if (metadata.getCategory() != TypeCategory.OBJECT || context.isResolved(object) || nesting - baseNesting > maxDepth
+            || getFieldCount(metadata, nesting, resolve, projection) == 0) {
+            return 0;
+        }
+
+        id = context.markIdentified(object);
+        context.enterContainer(object);
+        result.append(ToString.TS_EXPR_BACK_REF);
+        result.append(id);
+        return id;
+    }
+
+    /**
+     * Get the number of fields of an object to be written.
+     *
+     * @param metadata The metadata of the class of the object.
+     * @param nesting The depth of the object.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param projection The node of the projection applying to the object, {@code null} if all fields are written.
+     * @return The number of fields, {@code 0} for a nested object that is not resolved.
+     */
+    private int getFieldCount(ClassMetadata metadata, int nesting, boolean resolve, ToStringProjection.Node projection) {
+        if (projection != null) {
+            return projection.getPlan(metadata.getType()).getFieldCount(metadata.getFieldCount(level));
+        }
+
+        return nesting > 0 && !resolve ? 0 : metadata.getFieldCount(level);
+    }
+
+    /**
+     * Start writing a nested object. If it can not be converted, the error is reported and {@code null} is written instead.
+     *
+     * @param object The nested object to be represented as a string.
+     * @param nesting The depth of the nested object, used for indentation.
+     * @param resolve Whether to resolve the fields of the nested object or not.
+     * @param projection The node of the projection applying to the nested object, {@code null} if all fields are written.
+     */
+    private void openNested(Object object, int nesting, boolean resolve, ToStringProjection.Node projection) {
+        if (object == null) {
+            result.append(TS_EXPR_FAILED);
+            return;
+        }
+
+        try {
+            open(object, nesting, resolve, projection);
+        } catch (UncheckedIOException | BufferOverflowException | BudgetExhaustedException e) {
+            throw e;
+        } catch (Exception e) {
+            reportError(e);
+            result.append(TS_EXPR_FAILED);
+        }
+    }
+
+    /**
+     * Write the next field or element of the frame on top of the stack, or finish the frame if there is none left.
+     *
+     * @param frame The frame on top of the stack.
+     * @throws Exception When any error occurs while writing.
+     */
+    private void step(Frame frame) throws Exception {
+        if (frame.iterator != null) {
+            if (frame.entry != null) {
+                Object value = frame.entry.getValue();
+                frame.entry = null;
+
+                appendEntryValue(frame, value);
+            } else if (frame.iterator.hasNext() && frame.index < maxElements) {
+                Object element = frame.iterator.next();
+                frame.index++;
+
+                appendElementSeparator(frame.nesting);
+
+                if (frame.entries) {
+                    appendEntry(frame, (Map.Entry<?, ?>) element);
+                } else {
+                    Object nested = appendValue(element);
+
+                    if (nested != null) {
+                        openNested(nested, frame.nesting + 1, frame.resolve, frame.projection);
+                    }
+                }
+            } else {
+                if (frame.index < frame.count) {
+                    appendElementSeparator(frame.nesting);
+                    appendOmitted(frame.count - frame.index);
+                }
+
+                renderer.appendSeparator(result, frame.nesting - 1);
+                result.append(TS_PARANTHESIS_CLOSE);
+
+                pop(true);
+            }
+
+            return;
+        }
+
+        if (frame.index < frame.count) {
+            int index = frame.index++;
+            FieldMetadata field = frame.metadata.getField(frame.plan == null ? index : frame.plan.fields()[index]);
+            Object nested;
+
+            if (frame.layout != null) {
+                nested = frame.layout.appendField(this, result, frame.object, index, frame.nesting);
+            } else {
+                nested = appendField(field, frame.object, index, frame.nesting);
+            }
+
+            if (nested != null) {
+                openNested(nested, frame.nesting + 1, frame.resolve && !field.isDontResolve(), frame.plan == null ? null : frame.plan.children()[index]);
+            }
+
+            return;
+        }
+
+        if (multiLine) {
+            renderer.appendSeparator(result, frame.nesting - 1);
+        }
+
+        result.append(TS_PARANTHESIS_CLOSE);
+
+        pop(true);
+    }
+
+    /**
+     * Write an entry of a map as key and value, separated like a field and its value.
+     * If the key is a nested object, the value is written by the next step, after the key has been written completely.
+     *
+     * @param frame The frame of the map.
+     * @param entry The entry to write.
+     */
+    private void appendEntry(Frame frame, Map.Entry<?, ?> entry) {
+        Object key = appendValue(entry.getKey());
+
+        if (key != null) {
+            frame.entry = entry;
+            openNested(key, frame.nesting + 1, frame.resolve, null);
+            return;
+        }
+
+        appendEntryValue(frame, entry.getValue());
+    }
+
+    /**
+     * Write the value of an entry of a map, after its key has been written.
+     *
+     * @param frame The frame of the map.
+     * @param value The value of the entry.
+     */
+    private void appendEntryValue(Frame frame, Object value) {
+        result.append(TS_EQUALS);
+
+        Object nested = appendValue(value);
+
+        if (nested != null) {
+            openNested(nested, frame.nesting + 1, frame.resolve, frame.projection);
+        }
+    }
+
+    /**
+     * Write an array of a primitive component type, with a specialized loop for each type, so no element is boxed.
+     * Arrays of primitives never contain nested objects, so they are written completely without pushing a frame.
+     *
+     * @param array The array to be represented as a string.
+     * @param nesting The depth of the array, used for indentation.
+     * @param resolve Whether to write the elements or only the length of the array.
+     */
+    private void appendPrimitiveArray(Object array, int nesting, boolean resolve) {
+        int length = Array.getLength(array);
+
+        if (length == 0 || !resolve) {
+            result.append(length);
+            result.append(TS_PARANTHESIS_CLOSE);
+            return;
+        }
+
+        int count = Math.min(length, maxElements);
+
+        if (array instanceof byte[] bytes && byteFormat != ToStringByteFormat.ELEMENTS) {
+            if (byteFormat == ToStringByteFormat.HEX) {
+                appendHex(bytes, count);
+            } else {
+                appendBase64(bytes, count);
+            }
+
+            if (count < length) {
+                appendOmitted(length - count);
+            }
+
+            result.append(TS_PARANTHESIS_CLOSE);
+            return;
+        }
+
+        if (parallelPool != null && count >= parallelThreshold) {
+            appendParallel(array, count, nesting, resolve, false);
+        } else {
+            appendPrimitiveElements(array, 0, count, nesting);
+        }
+
+        if (count < length) {
+            appendElementSeparator(nesting);
+            appendOmitted(length - count);
+        }
+
+        renderer.appendSeparator(result, nesting - 1);
+        result.append(TS_PARANTHESIS_CLOSE);
+    }
+
+    /**
+     * Append a range of elements of an array of a primitive component type, each preceded by the element separator.
+     *
+     * @param array The array whose elements to append.
+     * @param from The index of the first element to append.
+     * @param to The index after the last element to append.
+     * @param nesting The depth of the array, used for indentation.
+     */
+    private void appendPrimitiveElements(Object array, int from, int to, int nesting) {
+        if (array instanceof int[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        } else if (array instanceof long[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        } else if (array instanceof byte[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append((int) values[i]);
+            }
+        } else if (array instanceof short[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append((int) values[i]);
+            }
+        } else if (array instanceof char[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        } else if (array instanceof double[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        } else if (array instanceof float[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        } else if (array instanceof boolean[] values) {
+            for (int i = from; i < to; i++) {
+                appendElementSeparator(nesting);
+                result.append(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Write a range of elements of a container in chunks on the parallel pool, and append the chunks in their original order.
+     * Each chunk sees the objects resolved before the container, but not the objects resolved by the chunks before it.
+     * A chunk that came across any object resolved by a chunk before it is therefore written again on this thread,
+     * after the objects of all chunks before it have been added to the context, so the output is exactly the sequential one.
+     *
+     * @param elements The elements, either as object array or as array of a primitive component type.
+     * @param count The number of elements to write.
+     * @param nesting The depth of the container, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param entries Whether the elements are entries of a map.
+     */
+    private void appendParallel(Object elements, int count, int nesting, boolean resolve, boolean entries) {
+        int chunkSize = Math.max(parallelThreshold / 4, (count + parallelPool.getParallelism() * 4 - 1) / (parallelPool.getParallelism() * 4));
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < count; from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, count);
+
+            tasks.add(parallelPool.submit(() -> renderChunk(elements, start, end, nesting, resolve, entries)));
+        }
+
+        List<Chunk> chunks = new ArrayList<>(tasks.size());
+
+        for (ForkJoinTask<Chunk> task : tasks) {
+            chunks.add(task.join()); /* the context must not be modified while chunks are still reading it */
+        }
+
+        RenderContext resolvedByChunks = new RenderContext();
+
+        for (Chunk chunk : chunks) {
+
+            if (chunk.context.hasVisitedAny(resolvedByChunks)) {
+                chunk = renderChunk(elements, chunk.from, chunk.to, nesting, resolve, entries);
+            }
+
+            resolvedByChunks.join(chunk.context);
+            context.join(chunk.context);
+            absorb(chunk.traversal);
+            result.append(chunk.text, 0, chunk.text.length());
+        }
+    }
+
+    /**
+     * Count an object or container that is visited, stopping the conversion if the budget allows no more.
+     *
+     * @param nesting The depth of the object.
+     */
+    void countNode(int nesting) {
+        if (++nodes > maxNodes) {
+            throw BudgetExhaustedException.INSTANCE;
+        }
+
+        if (nesting - baseNesting > deepest) {
+            deepest = nesting - baseNesting;
+        }
+    }
+
+    /**
+     * Report an error of a nested object, which is written as {@code null} instead.
+     *
+     * @param e The error.
+     */
+    void reportError(Exception e) {
+        e.printStackTrace();
+        errors++;
+    }
+
+    /**
+     * Record that part of the object graph has been omitted because of the budget.
+     */
+    void markTruncated() {
+        truncated = true;
+    }
+
+    /**
+     * Get the depth of the converted object, from which the depth of nested objects is measured.
+     *
+     * @return The depth of the converted object.
+     */
+    int getBaseNesting() {
+        return baseNesting;
+    }
+
+    /**
+     * Add the counters of a traversal that has written a chunk or cached object for this traversal to the counters of this traversal.
+     *
+     * @param traversal The traversal of the chunk or cached object.
+     */
+    private void absorb(Traversal traversal) {
+        nodes += traversal.nodes;
+        deepest = Math.max(deepest, traversal.deepest);
+        truncated |= traversal.truncated;
+        errors += traversal.errors;
+    }
+
+    /**
+     * Write a range of elements of a container into a separate buffer, using a context forked from the context of this traversal.
+     *
+     * @param elements The elements, either as object array or as array of a primitive component type.
+     * @param from The index of the first element to write.
+     * @param to The index after the last element to write.
+     * @param nesting The depth of the container, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param entries Whether the elements are entries of a map.
+     * @return The written chunk.
+     */
+    private Chunk renderChunk(Object elements, int from, int to, int nesting, boolean resolve, boolean entries) {
+        StringBuilder text = new StringBuilder();
+        RenderContext chunkContext = context.fork();
+        Traversal traversal = new Traversal(RenderSink.of(text), chunkContext, this);
+
+        if (elements instanceof Object[] objects) {
+            for (int i = from; i < to; i++) {
+                traversal.appendElementSeparator(nesting);
+
+                if (entries) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) objects[i];
+
+                    traversal.appendChunkElement(entry.getKey(), nesting, resolve);
+                    traversal.result.append(TS_EQUALS);
+                    traversal.appendChunkElement(entry.getValue(), nesting, resolve);
+                } else {
+                    traversal.appendChunkElement(objects[i], nesting, resolve);
+                }
+            }
+        } else {
+            traversal.appendPrimitiveElements(elements, from, to, nesting);
+        }
+
+        return new Chunk(from, to, text, chunkContext, traversal);
+    }
+
+    /**
+     * Write a single element of a chunk completely, including all of its nested objects.
+     *
+     * @param element The element to write.
+     * @param nesting The depth of the container, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     */
+    private void appendChunkElement(Object element, int nesting, boolean resolve) {
+        Object nested = appendValue(element);
+
+        if (nested != null) {
+            openNested(nested, nesting + 1, resolve, null);
+
+            try {
+                drain(0, true);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e); /* not thrown for nested objects */
+            }
+        }
+    }
+
+    /**
+     * Append the first bytes of an array as two hexadecimal digits each.
+     *
+     * @param bytes The array to append.
+     * @param count The number of bytes to append.
+     */
+    void appendHex(byte[] bytes, int count) {
+        for (int i = 0; i < count; i++) {
+            result.append(HEX_DIGITS[(bytes[i] >> 4) & 0xF]);
+            result.append(HEX_DIGITS[bytes[i] & 0xF]);
+        }
+    }
+
+    /**
+     * Append the first bytes of an array encoded as Base64, padded as specified by RFC 4648.
+     *
+     * @param bytes The array to append.
+     * @param count The number of bytes to append.
+     */
+    void appendBase64(byte[] bytes, int count) {
+        int i = 0;
+
+        for (; i + 2 < count; i += 3) {
+            int block = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+
+            result.append(BASE64_DIGITS[block >>> 18]);
+            result.append(BASE64_DIGITS[(block >>> 12) & 0x3F]);
+            result.append(BASE64_DIGITS[(block >>> 6) & 0x3F]);
+            result.append(BASE64_DIGITS[block & 0x3F]);
+        }
+
+        if (i < count) {
+            int block = (bytes[i] & 0xFF) << 16 | (i + 1 < count ? (bytes[i + 1] & 0xFF) << 8 : 0);
+
+            result.append(BASE64_DIGITS[block >>> 18]);
+            result.append(BASE64_DIGITS[(block >>> 12) & 0x3F]);
+            result.append(i + 1 < count ? BASE64_DIGITS[(block >>> 6) & 0x3F] : '=');
+            result.append('=');
+        }
+    }
+
+    /**
+     * Append the separator preceding each element of a container.
+     *
+     * @param nesting The depth of the container, used for indentation.
+     */
+    private void appendElementSeparator(int nesting) {
+        renderer.appendSeparator(result, nesting);
+    }
+
+    /**
+     * Append the marker of elements omitted because of the budget.
+     *
+     * @param count The number of omitted elements.
+     */
+    private void appendOmitted(int count) {
+        markTruncated();
+        result.append(ToString.TS_EXPR_OMITTED);
+        result.append("(+");
+        result.append(count);
+        result.append(" more)");
+    }
+
+    /**
+     * Append a field of an object, interpreting its metadata.
+     *
+     * @param field The metadata of the field to append.
+     * @param object The object from which to get the field's value.
+     * @param index The position of the field.
+     * @param nesting The depth of the object, used for indentation.
+     * @return The value of the field if it is a nested object still to be written, otherwise {@code null}.
+     * @throws Exception When the value of the field can not be read.
+     */
+    private Object appendField(FieldMetadata field, Object object, int index, int nesting) throws Exception {
+        if (index > 0) {
+            result.append(delimiter);
+        }
+
+        if (multiLine) {
+            appendIndentation(nesting);
+        }
+
+        result.append(field.getName());
+        result.append(TS_EQUALS);
+
+        if (field.getCategory() == TypeCategory.PRIMITIVE) {
+            field.getAccessor().appendPrimitive(result, object);
+            return null;
+        }
+
+        return appendValue(field.getAccessor().get(object));
+    }
+
+    /**
+     * Append a value if it is not a nested object, i.e. if it is {@code null} or of a class with a {@link ToStringFormatter}.
+     * Present {@link Optional} values are written as their content, empty ones as {@code null}.
+     *
+     * @param value The value to append.
+     * @return The value if it is a nested object still to be written, otherwise {@code null}.
+     */
+    Object appendValue(Object value) {
+        if (value == null) {
+            result.append(ToString.TS_EXPR_NULL);
+            return null;
+        }
+
+        ToStringFormatter<Object> formatter = renderer.findFormatter(value.getClass());
+
+        if (formatter != null) {
+            result.append(formatter, value);
+            return null;
+        }
+
+        if (value instanceof Optional<?> optional) {
+            return appendValue(optional.orElse(null));
+        }
+
+        return value;
+    }
+
+    /**
+     * Append the indentation of a multi-line representation for a certain depth.
+     *
+     * @param nesting The depth to indent for, resulting in one more indentation.
+     */
+    void appendIndentation(int nesting) {
+        renderer.appendIndentation(result, nesting);
+    }
+
+    /**
+     * Get the number of frames allocated so far, which are kept for reuse.
+     *
+     * @return The number of allocated frames.
+     */
+    int getFrameCapacity() {
+        return frames.size();
+    }
+
+    /**
+     * Push a frame on the stack, reusing a frame that has been popped before.
+     *
+     * @param object The object or container of the frame.
+     * @param metadata The metadata of the object, {@code null} for containers.
+     * @param layout The compiled layout of the object, {@code null} if interpreted or for containers.
+     * @param iterator The iterator over the elements of a container, {@code null} for objects.
+     * @param count The number of fields to write, or the number of elements of a container.
+     * @param nesting The depth of the object, used for indentation.
+     * @param resolve Whether to resolve nested objects or not.
+     * @param projection The node of the projection applying to the fields or elements, {@code null} if all fields are written.
+     * @param plan The plan selecting the fields of the object, {@code null} if all fields are written or for containers.
+     * @param entries Whether the elements are entries of a map, written as key and value.
+     */
+    private void push(Object object, ClassMetadata metadata, CompiledLayout layout, Iterator<?> iterator, int count, int nesting, boolean resolve,
+                      ToStringProjection.Node projection, ToStringProjection.Plan plan, boolean entries) {
+        Frame frame;
+
+        if (depth < frames.size()) {
+            frame = frames.get(depth);
+        } else {
+            frame = new Frame();
+            frames.add(frame);
+        }
+
+        frame.object = object;
+        frame.metadata = metadata;
+        frame.layout = layout;
+        frame.iterator = iterator;
+        frame.index = 0;
+        frame.count = count;
+        frame.nesting = nesting;
+        frame.resolve = resolve;
+        frame.projection = projection;
+        frame.plan = plan;
+        frame.entries = entries;
+
+        depth++;
+    }
+
+    /**
+     * Pop the frame on top of the stack, releasing its references so it can be reused.
+     * If the representation of the object of the frame is captured for the cache, capturing it ends.
+     *
+     * @param completed Whether the object of the frame has been written completely, otherwise it is not cached.
+     */
+    private void pop(boolean completed) {
+        Frame frame = frames.get(--depth);
+
+        if (frame.iterator != null || deduplicate) {
+            context.exitContainer(frame.object);
+        }
+
+        if (frame.fragmentContext != null) {
+            endFragment(frame.object, frame.nesting, frame.resolve, frame.fragmentContext, frame.fragmentStart, completed);
+            frame.fragmentContext = null;
+        }
+
+        frame.object = null;
+        frame.metadata = null;
+        frame.layout = null;
+        frame.iterator = null;
+        frame.projection = null;
+        frame.plan = null;
+        frame.entry = null;
+    }
+
+    /**
+     * Holder of the check whether any recording enables {@link RenderEvent}, only loaded on runtimes containing the JDK Flight Recorder.
+     * Initializing an event class registers it with the flight recorder, which starts its metadata repository, so the event
+     * class is only touched once the flight recorder has been initialized, i.e. once any recording may have been started.
+     * Until then a conversion neither creates an event nor loads any internal class of the flight recorder.
+     */
+    private static final class EventProbe {
+
+        /**
+         * An event that is never committed, only checked for being enabled, created once the flight recorder has been initialized.
+         * Written without synchronization, a lost update only creates another probe.
+         */
+        private static RenderEvent probe;
+
+        /**
+         * Prevents instantiation of this static holder.
+         */
+        private EventProbe() {
+        }
+
+        /**
+         * Check whether any recording enables the event.
+         *
+         * @return Whether conversions are to be recorded.
+         */
+        private static boolean isEnabled() {
+            if (!FlightRecorder.isInitialized()) {
+                return false;
+            }
+
+            RenderEvent event = probe;
+
+            if (event == null) {
+                event = new RenderEvent();
+                probe = event;
+            }
+
+            return event.isEnabled();
+        }
+
+    }
+
+    /**
+     * A range of elements of a container written into a separate buffer.
+     *
+     * @param from The index of the first element.
+     * @param to The index after the last element.
+     * @param text The written elements.
+     * @param context The context the elements have been written with.
+     * @param traversal The traversal that has written the elements.
+     */
+    private record Chunk(int from, int to, StringBuilder text, RenderContext context, Traversal traversal) {
+    }
+
+    /**
+     * An object or container whose fields or elements are currently being written.
+     */
+    private static final class Frame {
+
+        /**
+         * The object or container being written.
+         */
+        private Object object;
+
+        /**
+         * The metadata of the object, {@code null} for containers.
+         */
+        private ClassMetadata metadata;
+
+        /**
+         * The compiled layout of the object, {@code null} if interpreted or for containers.
+         */
+        private CompiledLayout layout;
+
+        /**
+         * The iterator over the remaining elements of a container, {@code null} for objects.
+         */
+        private Iterator<?> iterator;
+
+        /**
+         * Position of the next field or element to write.
+         */
+        private int index;
+
+        /**
+         * Number of fields to write, or the number of elements of a container.
+         */
+        private int count;
+
+        /**
+         * The depth of the object, used for indentation.
+         */
+        private int nesting;
+
+        /**
+         * Whether to resolve nested objects or not.
+         */
+        private boolean resolve;
+
+        /**
+         * The node of the projection applying to the fields or elements, {@code null} if all fields are written.
+         */
+        private ToStringProjection.Node projection;
+
+        /**
+         * The plan selecting the fields of the object, {@code null} if all fields are written or for containers.
+         */
+        private ToStringProjection.Plan plan;
+
+        /**
+         * Whether the elements are entries of a map, written as key and value.
+         */
+        private boolean entries;
+
+        /**
+         * The entry of a map whose key is currently being written, {@code null} if no value is pending.
+         */
+        private Map.Entry<?, ?> entry;
+
+        /**
+         * The context before capturing the representation of the object for the cache started, {@code null} if not captured.
+         */
+        private RenderContext fragmentContext;
+
+        /**
+         * The position in the captured output at which the representation of the object starts.
+         */
+        private int fragmentStart;
+
+    }
+
+}
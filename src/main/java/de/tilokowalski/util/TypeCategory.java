@@ -0,0 +1,72 @@
+package de.tilokowalski.util;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Category of a type as far as the string conversion is concerned.
+ * Used for both the runtime class of a rendered object and the declared type of a field.
+ */
+enum TypeCategory {
+
+    /**
+     * A primitive type like {@code int} or {@code boolean}.
+     */
+    PRIMITIVE,
+
+    /**
+     * A type implementing {@link Collection}.
+     */
+    COLLECTION,
+
+    /**
+     * A type implementing {@link Map}.
+     */
+    MAP,
+
+    /**
+     * An array type.
+     */
+    ARRAY,
+
+    /**
+     * Any other type, whose fields are explored via reflection.
+     */
+    OBJECT;
+
+    /**
+     * Determine the category of a given type.
+     *
+     * @param type The type to categorize.
+     * @return The category of the type.
+     */
+    static TypeCategory of(Class<?> type) {
+        if (type.isPrimitive()) {
+            return PRIMITIVE;
+        }
+
+        if (type.isArray()) {
+            return ARRAY;
+        }
+
+        if (Collection.class.isAssignableFrom(type)) {
+            return COLLECTION;
+        }
+
+        if (Map.class.isAssignableFrom(type)) {
+            return MAP;
+        }
+
+        return OBJECT;
+    }
+
+    /**
+     * Check whether this category describes a container of other values.
+     *
+     * @return Whether the category is a collection, map or array.
+     */
+    boolean isContainer() {
+        return this == COLLECTION || this == MAP || this == ARRAY;
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.tilokowalski.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import de.tilokowalski.util.objects.Address;
+import de.tilokowalski.util.objects.Measurement;
+import de.tilokowalski.util.objects.Person;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a pooled {@link ToStringRenderer} allocates nothing in steady state when writing to a target of the caller.
+ * Allocations are measured per thread, which requires the extension of {@link ThreadMXBean} provided by HotSpot.
+ */
+public class ToStringAllocationTest {
+
+    /**
+     * Number of conversions to warm up the pool and the compiled layouts.
+     */
+    private static final int WARM_UP = 20_000;
+
+    /**
+     * Number of measured conversions.
+     */
+    private static final int ITERATIONS = 10_000;
+
+    /**
+     * Renderer reusing its buffers and contexts.
+     */
+    private static final ToStringRenderer RENDERER = ToStringRenderer.builder()
+        .delimiter(ToString.TS_DELIMITER_ML)
+        .resolve(true)
+        .pooled(true)
+        .build();
+
+    /**
+     * An example person object with a nested address and a cycle.
+     */
+    private Person person;
+
+    /**
+     * Sets up the person object before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        Address address = new Address("123 Main St", "Anytown", "12345");
+        List<Address> addressesOld = new ArrayList<>();
+        addressesOld.add(new Address("1 Old Rd", "Oldtown", "54321"));
+
+        person = new Person("John Doe", 30, address, addressesOld);
+        address.setResident(person);
+    }
+
+    /**
+     * Tests conversions of a nested object graph into a StringBuilder of the caller.
+     */
+    @Test
+    void testRenderToStringBuilderAllocatesNothing() {
+        StringBuilder stringBuilder = new StringBuilder(1024);
+
+        long allocated = measure(() -> {
+            stringBuilder.setLength(0);
+            RENDERER.renderTo(stringBuilder, person);
+        });
+
+        assertEquals(ToString.createDump(person), stringBuilder.toString());
+        assertTrue(allocated < ITERATIONS, "allocated " + allocated + " bytes in " + ITERATIONS + " conversions");
+    }
+
+    /**
+     * Tests conversions of an object with primitive fields into a character buffer of the caller.
+     */
+    @Test
+    void testRenderToCharBufferAllocatesNothing() {
+        Measurement measurement = new Measurement();
+        CharBuffer charBuffer = CharBuffer.allocate(1024);
+
+        long allocated = measure(() -> {
+            charBuffer.clear();
+            RENDERER.renderTo(charBuffer, measurement);
+        });
+
+        assertEquals(ToString.createDump(measurement), charBuffer.flip().toString());
+        assertTrue(allocated < ITERATIONS, "allocated " + allocated + " bytes in " + ITERATIONS + " conversions");
+    }
+
+    /**
+     * Measure the bytes allocated by the current thread while performing conversions after warm-up.
+     *
+     * @param conversion A single conversion.
+     * @return The number of bytes allocated by all measured conversions.
+     */
+    private static long measure(Runnable conversion) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean, "allocations can not be measured on this JVM");
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled(), "allocations can not be measured on this JVM");
+
+        for (int i = 0; i < WARM_UP; i++) {
+            conversion.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            conversion.run();
+        }
+
+        return allocations.getThreadAllocatedBytes(threadId) - before;
+    }
+
+}
@@ -0,0 +1,133 @@
+package de.tilokowalski.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import de.tilokowalski.util.objects.Address;
+import de.tilokowalski.util.objects.Person;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link ToString} class when shared object graphs are converted by many threads at the same time.
+ * Every conversion must produce exactly the output of a conversion without any concurrency.
+ */
+public class ToStringConcurrencyTest {
+
+    /**
+     * Number of concurrent tasks.
+     */
+    private static final int TASKS = 64;
+
+    /**
+     * Number of conversions performed by each task.
+     */
+    private static final int ITERATIONS = 500;
+
+    /**
+     * A list of persons sharing the same address, converted by all tasks.
+     */
+    private List<Person> persons;
+
+    /**
+     * Sets up the shared object graph before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        Address address = new Address("123 Main St", "Anytown", "12345");
+        List<Address> addressesOld = new ArrayList<>();
+        addressesOld.add(new Address("1 Old Rd", "Oldtown", "54321"));
+
+        persons = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            Person person = new Person("Person " + i, 20 + i, address, addressesOld);
+            persons.add(person);
+        }
+
+        address.setResident(persons.get(0));
+    }
+
+    /**
+     * Tests concurrent conversions on platform threads.
+     *
+     * @throws Exception When any task fails.
+     */
+    @Test
+    void testConcurrentConversionsOnPlatformThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+            assertConcurrentConversions(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests concurrent conversions on virtual threads, if supported by the running Java version.
+     *
+     * @throws Exception When any task fails.
+     */
+    @Test
+    void testConcurrentConversionsOnVirtualThreads() throws Exception {
+        Method factory;
+
+        try {
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            factory = null;
+        }
+
+        assumeTrue(factory != null, "virtual threads are not supported by this Java version");
+
+        ExecutorService executor = (ExecutorService) factory.invoke(null);
+
+        try {
+            assertConcurrentConversions(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Convert the shared object graph from many tasks at the same time and compare each result to a sequential conversion.
+     *
+     * @param executor The executor to run the tasks on.
+     * @throws Exception When any task fails.
+     */
+    private void assertConcurrentConversions(ExecutorService executor) throws Exception {
+        String expectedDump = ToString.createDump(persons);
+        String expectedSingleLine = ToString.createCustom(persons, ',', 0, ToString.TS_LEVEL_DEEP, true);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int task = 0; task < TASKS; task++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+
+                for (int i = 0; i < ITERATIONS; i++) {
+                    assertEquals(expectedDump, ToString.createDump(persons));
+                    assertEquals(expectedSingleLine, ToString.createCustom(persons, ',', 0, ToString.TS_LEVEL_DEEP, true));
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+}
@@ -1,16 +1,52 @@
 package de.tilokowalski.util;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import de.tilokowalski.util.objects.Address;
+import de.tilokowalski.util.objects.Chain;
+import de.tilokowalski.util.objects.Employee;
+import de.tilokowalski.util.objects.Label;
+import de.tilokowalski.util.objects.Measurement;
+import de.tilokowalski.util.objects.Node;
 import de.tilokowalski.util.objects.Person;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Tests the {@link ToString} class by utilizing the {@link Person} and {@link Address} classes.
@@ -110,4 +146,787 @@ public class ToStringTest {
         assertEquals(expected, result);
     }
 
+    /**
+     * Tests the {@link ToString#createCustom(Object, char, int, int, boolean)} method with different levels of class hierarchy.
+     * The fields of superclasses must only be included if the level reaches them, also when the class metadata is already cached.
+     */
+    @Test
+    void testCreateCustomWithLevels() {
+        Employee employee = new Employee("Jane Doe", 40, address, addressesOld, "ACME");
+
+        String expectedOnly = "Employee[company=\"ACME\"]";
+        String expectedDeep = "Employee[company=\"ACME\",name=\"Jane Doe\",address=Address[],addressesOld=ArrayList[1]]";
+
+        assertEquals(expectedOnly, ToString.createCustom(employee, ',', 0, ToString.TS_LEVEL_ONLY, false));
+        assertEquals(expectedDeep, ToString.createCustom(employee, ',', 0, ToString.TS_LEVEL_DEEP, false));
+        assertEquals(expectedDeep, ToString.createCustom(employee, ',', 0, 1, false));
+        assertEquals(expectedOnly, ToString.createCustom(employee, ',', 0, ToString.TS_LEVEL_ONLY, false));
+    }
+
+    /**
+     * Tests the {@link ToString#create(Object)} method with an object containing a field of every primitive type.
+     * The values must be rendered like their boxed counterparts.
+     */
+    @Test
+    void testCreateWithPrimitiveFields() {
+        String expected = "Measurement[sensor=7,channel=300,sequence=42,timestamp=1700000000000,value=21.5,tolerance=0.25,valid=true,unit=C]";
+        String result = ToString.create(new Measurement());
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests that the {@link ToStringEngine#INTERPRETED} and {@link ToStringEngine#COMPILED} engines produce the same output.
+     */
+    @Test
+    void testEnginesProduceSameOutput() {
+        Employee employee = new Employee("Jane Doe", 40, address, addressesOld, "ACME");
+        ToStringEngine previous = ToString.getEngine();
+
+        try {
+            ToString.setEngine(ToStringEngine.INTERPRETED);
+            String interpretedDump = ToString.createDump(employee);
+            String interpreted = ToString.create(new Measurement());
+
+            ToString.setEngine(ToStringEngine.COMPILED);
+            String compiledDump = ToString.createDump(employee);
+            String compiled = ToString.create(new Measurement());
+
+            assertEquals(interpretedDump, compiledDump);
+            assertEquals(interpreted, compiled);
+        } finally {
+            ToString.setEngine(previous);
+        }
+    }
+
+    /**
+     * Tests the {@link ToString#createDump(Object)} method with a cycle reached through the first field of each object.
+     * The object must already count as resolved while its first field is resolved.
+     */
+    @Test
+    void testCreateDumpWithCycleInFirstField() {
+        Node first = new Node("a");
+        Node second = new Node("b");
+        first.setNext(second);
+        second.setNext(first);
+
+        String expected = "Node[\n\tnext=Node[\n\t\tnext=Node[PARENT]\n\t\tlabel=\"b\"\n\t]\n\tlabel=\"a\"\n]";
+        String result = ToString.createDump(first);
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests the {@link ToString#createDump(Object)} method with a list containing itself.
+     * The list must be marked as circular reference within its own elements.
+     */
+    @Test
+    void testCreateDumpWithSelfContainingList() {
+        List<Object> selfContaining = new ArrayList<>();
+        selfContaining.add(selfContaining);
+
+        String expected = "ArrayList[\n\tArrayList[PARENT]\n]";
+        String result = ToString.createDump(selfContaining);
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests the {@link ToString#appendDumpTo(Appendable, Object)} and {@link ToString#writeDumpTo(java.io.OutputStream, Object)} methods with a person object.
+     * The streamed output must be exactly the output of {@link ToString#createDump(Object)}.
+     *
+     * @throws IOException When the output can not be written.
+     */
+    @Test
+    void testAppendDumpToWithPersonObject() throws IOException {
+        String expected = ToString.createDump(person);
+
+        StringWriter writer = new StringWriter();
+        ToString.appendDumpTo(writer, person);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ToString.writeDumpTo(outputStream, person);
+
+        assertEquals(expected, writer.toString());
+        assertEquals(expected, outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests the {@link ToString#createCustom(Object, char, int, int, boolean)} method with a very deep chain of nodes.
+     * Nested objects must not be resolved by recursion, so the conversion must not overflow the stack.
+     */
+    @Test
+    void testCreateCustomWithDeepChain() {
+        int length = 50_000;
+
+        Node head = new Node("0");
+        Node tail = head;
+
+        for (int i = 1; i < length; i++) {
+            Node node = new Node(String.valueOf(i));
+            tail.setNext(node);
+            tail = node;
+        }
+
+        StringBuilder expected = new StringBuilder();
+        expected.append("Node[next=".repeat(length)).append("NULL");
+
+        for (int i = length - 1; i >= 0; i--) {
+            expected.append(",label=\"").append(i).append("\"]");
+        }
+
+        String result = ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true);
+
+        assertEquals(expected.toString(), result);
+    }
+
+    /**
+     * Tests the {@link ToString#createCustom(Object, char, int, int, boolean, ToStringBudget)} method with a large list and a limited number of elements.
+     * Only the allowed elements must be written, followed by the number of omitted elements.
+     */
+    @Test
+    void testCreateCustomWithElementBudget() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 500_000; i++) {
+            nodes.add(new Node(String.valueOf(i)));
+        }
+
+        ToStringBudget budget = ToStringBudget.builder().maxElements(2).build();
+
+        String expected = "ArrayList[,\tNode[next=NULL,label=\"0\"],\tNode[next=NULL,label=\"1\"],\t...(+499998 more),]";
+        String result = ToString.createCustom(nodes, ',', 0, ToString.TS_LEVEL_DEEP, true, budget);
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests the {@link ToString#createCustom(Object, char, int, int, boolean, ToStringBudget)} method with a chain of nodes and limited depth, length and number of nodes.
+     * The conversion must stop at the first exhausted limit and write the omission marker instead.
+     */
+    @Test
+    void testCreateCustomWithBudgetLimits() {
+        Node head = new Node("a");
+        Node second = new Node("b");
+        head.setNext(second);
+        second.setNext(new Node("c"));
+
+        String depthResult = ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true, ToStringBudget.builder().maxDepth(1).build());
+        String lengthResult = ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true, ToStringBudget.builder().maxLength(15).build());
+        String nodesResult = ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true, ToStringBudget.builder().maxNodes(2).build());
+        String unlimitedResult = ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true, ToStringBudget.UNLIMITED);
+
+        assertEquals("Node[next=Node[next=Node[...],label=\"b\"],label=\"a\"]", depthResult);
+        assertEquals("Node[next=Node[...", lengthResult);
+        assertEquals("Node[next=Node[next=...", nodesResult);
+        assertEquals(ToString.createCustom(head, ',', 0, ToString.TS_LEVEL_DEEP, true), unlimitedResult);
+    }
+
+    /**
+     * Tests the {@link ToString#createDump(Object)} and {@link ToString#create(Object)} methods with arrays.
+     * Resolved arrays must list their elements, unresolved arrays only their length.
+     */
+    @Test
+    void testCreateDumpWithArrays() {
+        Node[] nodes = {new Node("a"), null};
+
+        assertEquals("int[][\n\t1\n\t-2\n\t3\n]", ToString.createDump(new int[] {1, -2, 3}));
+        assertEquals("double[][\n\t0.5\n]", ToString.createDump(new double[] {0.5}));
+        assertEquals("char[][\n\tx\n\ty\n]", ToString.createDump(new char[] {'x', 'y'}));
+        assertEquals("long[][3]", ToString.create(new long[] {1L, 2L, 3L}));
+        assertEquals("Node[][\n\tNode[\n\t\tnext=NULL\n\t\tlabel=\"a\"\n\t]\n\tNULL\n]", ToString.createDump(nodes));
+        assertEquals("Node[][2]", ToString.create(nodes));
+    }
+
+    /**
+     * Tests the {@link ToString#createDump(Object)} method with a byte array in all formats of {@link ToStringByteFormat}.
+     */
+    @Test
+    void testCreateDumpWithByteArrayFormats() {
+        byte[] bytes = {104, 101, 108, 108, -1};
+
+        try {
+            assertEquals("byte[][\n\t104\n\t101\n\t108\n\t108\n\t-1\n]", ToString.createDump(bytes));
+
+            ToString.setByteFormat(ToStringByteFormat.HEX);
+            assertEquals("byte[][68656c6cff]", ToString.createDump(bytes));
+
+            ToString.setByteFormat(ToStringByteFormat.BASE64);
+            assertEquals("byte[][aGVsbP8=]", ToString.createDump(bytes));
+            assertEquals("byte[][aGVs...(+2 more)]", ToString.createCustom(bytes, '\n', 0, ToString.TS_LEVEL_DEEP, true, ToStringBudget.builder().maxElements(3).build()));
+        } finally {
+            ToString.setByteFormat(ToStringByteFormat.ELEMENTS);
+        }
+    }
+
+    /**
+     * Tests the built-in formatters and {@link ToString#registerFormatter(Class, ToStringFormatter)} with values in collections.
+     * Values with a formatter must be written as a single value, registered formatters must take precedence over the built-in ones.
+     */
+    @Test
+    void testCreateDumpWithFormatters() {
+        UUID uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+        Instant instant = Instant.parse("2024-01-05T10:15:30Z");
+        OffsetDateTime offsetDateTime = OffsetDateTime.of(2024, 1, 5, 10, 15, 30, 0, ZoneOffset.ofHours(2));
+        List<Object> values = Arrays.asList("text", 42, new BigDecimal("1.50"), uuid, instant, offsetDateTime, Optional.of(true), Optional.empty(), null);
+
+        String expected = "ArrayList[\n\t\"text\"\n\t42\n\t1.50\n\t123e4567-e89b-12d3-a456-426614174000\n\t2024-01-05T10:15:30Z\n\t2024-01-05T10:15:30+02:00\n\ttrue\n\tNULL\n\tNULL\n]";
+        String result = ToString.createDump(new ArrayList<>(values));
+
+        assertEquals(expected, result);
+
+        try {
+            ToString.registerFormatter(UUID.class, (value, builder) -> builder.append("uuid:").append(value.getLeastSignificantBits()));
+            assertEquals("ArrayList[\n\tuuid:" + uuid.getLeastSignificantBits() + "\n]", ToString.createDump(new ArrayList<>(List.of(uuid))));
+        } finally {
+            ToString.registerFormatter(UUID.class, (value, builder) -> builder.append(value));
+        }
+    }
+
+    /**
+     * Tests the {@link ToString#createDump(Object)} method with a legacy date.
+     * The date must be written in the default time zone, in the same format as {@link java.text.SimpleDateFormat} with the pattern {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ}.
+     */
+    @Test
+    void testCreateDumpWithDate() {
+        Date date = new Date(1_700_000_000_123L);
+
+        String expected = "ArrayList[\n\t" + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(date) + "\n]";
+        String result = ToString.createDump(new ArrayList<>(List.of(date)));
+
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Tests a {@link ToStringRenderer} with custom indentation and a formatter of its own.
+     * The renderer must produce the output of {@link ToString#createDump(Object)} with its indentation, and its formatter must not affect other renderers.
+     */
+    @Test
+    void testRendererWithIndentAndFormatter() {
+        ToStringRenderer renderer = ToStringRenderer.builder()
+            .delimiter(ToString.TS_DELIMITER_ML)
+            .indent("  ")
+            .resolve(true)
+            .formatter(Address.class, (value, builder) -> builder.append("<address>"))
+            .build();
+
+        String expected = "Person[\n  name=\"John Doe\"\n  address=<address>\n  addressesOld=ArrayList[1]\n]";
+
+        assertEquals(expected, renderer.render(person));
+        assertEquals(ToString.createDump(person), ToStringRenderer.DUMP.render(person));
+        assertEquals(ToString.createDump(person).replace("\t", "  "), ToStringRenderer.builder().delimiter('\n').indent("  ").resolve(true).build().render(person));
+    }
+
+    /**
+     * Tests a renderer writing large containers in parallel with a low threshold.
+     * The output must be exactly the sequential output, also with objects shared between chunks and cycles through the container.
+     */
+    @Test
+    void testParallelRendererProducesSameOutput() {
+        List<Object> elements = new ArrayList<>();
+        Map<Integer, Object> values = new HashMap<>();
+        int[] numbers = new int[100];
+
+        for (int i = 0; i < 100; i++) {
+            elements.add(i % 7 == 0 ? person : new Address("Street " + i, "Anytown", String.valueOf(i)));
+            values.put(i, i % 5 == 0 ? elements : address);
+            numbers[i] = i * i;
+        }
+
+        elements.add(values);
+        elements.add(numbers);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            ToStringRenderer parallel = ToStringRenderer.builder()
+                .delimiter(ToString.TS_DELIMITER_ML)
+                .resolve(true)
+                .parallel(true)
+                .parallelPool(pool)
+                .parallelThreshold(8)
+                .build();
+
+            assertEquals(ToStringRenderer.DUMP.render(elements), parallel.render(elements));
+            assertEquals(ToStringRenderer.DUMP.render(numbers), parallel.render(numbers));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests the {@link ToString#lazy(Object)} and {@link ToString#lazyDump(Object)} methods.
+     * The object must not be converted before the handle is written, and only once however often it is written.
+     * A snapshot must not reflect changes of the object after it has been taken.
+     */
+    @Test
+    void testLazyHandles() {
+        int[] conversions = new int[1];
+        ToStringRenderer renderer = ToStringRenderer.builder()
+            .formatter(Address.class, (value, builder) -> builder.append("<address ").append(++conversions[0]).append('>'))
+            .build();
+
+        ToStringHandle handle = renderer.lazy(address);
+
+        assertEquals(0, conversions[0]);
+        assertEquals("<address 1>", handle.toString());
+        assertEquals("<address 1>", handle.get());
+        assertEquals(1, conversions[0]);
+
+        List<Integer> numbers = new ArrayList<>(list);
+        ToStringHandle lazy = ToString.lazy(numbers);
+        ToStringHandle snapshot = ToString.lazy(numbers).snapshot();
+        String before = ToString.create(numbers);
+        numbers.add(4);
+
+        assertEquals(ToString.create(numbers), lazy.toString());
+        assertEquals(before, snapshot.toString());
+        assertEquals(ToString.createDump(person), ToString.lazyDump(person).get());
+    }
+
+    /**
+     * Tests a renderer caching the representations of records.
+     * The output must be exactly the output without cache, also when nested objects of a cached record have already been written,
+     * and records written again must be taken from the cache.
+     */
+    @Test
+    void testCachingRendererProducesSameOutput() {
+        Label home = new Label("home", address);
+        Label work = new Label("work", new Address("1 Office Rd", "Anytown", "12345"));
+        List<Object> elements = List.of(home, work, List.of(home), address, person);
+        List<Object> addressFirst = List.of(address, home);
+
+        ToStringRenderer renderer = ToStringRenderer.builder()
+            .delimiter(ToString.TS_DELIMITER_ML)
+            .resolve(true)
+            .cacheSize(16)
+            .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ToStringRenderer.DUMP.render(elements), renderer.render(elements));
+            assertEquals(ToStringRenderer.DUMP.render(addressFirst), renderer.render(addressFirst));
+            assertEquals(ToStringRenderer.DUMP.render(work), renderer.render(work));
+        }
+
+        ToStringCacheStatistics statistics = renderer.getCacheStatistics();
+
+        assertTrue(statistics.getHits() > 0);
+        assertTrue(statistics.getMisses() > 0);
+        assertTrue(statistics.getSize() <= 16);
+
+        ToStringRenderer small = ToStringRenderer.builder().resolve(true).cacheSize(1).build();
+
+        assertEquals(ToString.createCustom(elements, ToString.TS_DELIMITER_SL, 0, ToString.TS_LEVEL_DEEP, true), small.render(elements));
+        assertEquals(1, small.getCacheStatistics().getSize());
+        assertTrue(small.getCacheStatistics().getEvictions() > 0);
+    }
+
+    /**
+     * Tests a renderer caching the representations of a deeply nested chain of records.
+     * Writing it must not recurse per cached record, and the output must be exactly the output without cache.
+     */
+    @Test
+    void testCachingRendererWritesDeepChain() {
+        Chain chain = null;
+
+        for (int i = 0; i < 50000; i++) {
+            chain = new Chain(chain, i);
+        }
+
+        ToStringRenderer uncached = ToStringRenderer.builder().resolve(true).build();
+        ToStringRenderer cached = ToStringRenderer.builder().resolve(true).cacheSize(1000).build();
+
+        String expected = uncached.render(chain);
+
+        assertEquals(expected, cached.render(chain));
+        assertEquals(expected, cached.render(chain));
+        assertEquals(uncached.render(chain.next()), cached.render(chain.next()));
+        assertTrue(cached.getCacheStatistics().getHits() > 0);
+    }
+
+    /**
+     * Tests a renderer deduplicating shared objects.
+     * Each resolved object must be identified on first appearance, shared objects must be written as back-references
+     * and cycles as back-references to their ancestor.
+     */
+    @Test
+    void testDeduplicatingRendererWritesBackReferences() {
+        ToStringRenderer renderer = ToStringRenderer.builder().delimiter(ToString.TS_DELIMITER_ML).resolve(true).deduplicate(true).build();
+
+        String expected = "ListN[\n\tAddress@1[\n\t\tstreet=\"123 Main St\"\n\t\tcity=\"Anytown\"\n\t\tzip=\"12345\"\n"
+            + "\t\tresident=Person@2[\n\t\t\tname=\"John Doe\"\n\t\t\taddress=Address[PARENT@1]\n\t\t\taddressesOld=ArrayList[1]\n\t\t]\n\t]\n"
+            + "\tAddress[@1]\n\tPerson[@2]\n]";
+
+        assertEquals(expected, renderer.render(List.of(address, address, person)));
+        assertEquals(expected, renderer.render(List.of(address, address, person)));
+    }
+
+    /**
+     * Tests writing UTF-8 directly to an output stream, a file channel and byte buffers, with characters of all encoded lengths.
+     * The bytes must be exactly the encoded {@link ToStringRenderer#render(Object)} output, also when the buffer is drained many times,
+     * and a byte buffer that is too small must be left unchanged.
+     *
+     * @param directory A temporary directory for the file.
+     * @throws IOException When the output can not be written.
+     */
+    @Test
+    void testWriteUtf8ToStreamChannelAndBuffer(@TempDir Path directory) throws IOException {
+        List<Object> elements = new ArrayList<>(List.of("Gr\u00fc\u00dfe", "\u20ac", "\ud83d\ude00", "\ud800x", -42, Long.MIN_VALUE, 1.5, person));
+
+        for (int i = 0; i < 1000; i++) {
+            elements.add("element \u00e9" + i);
+        }
+
+        byte[] expected = ToStringRenderer.DUMP.render(elements).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ToStringRenderer.DUMP.writeTo(outputStream, elements);
+
+        assertArrayEquals(expected, outputStream.toByteArray());
+
+        Path file = directory.resolve("dump.txt");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ToStringRenderer.DUMP.writeTo(channel, elements);
+        }
+
+        assertArrayEquals(expected, Files.readAllBytes(file));
+
+        ByteBuffer exact = ByteBuffer.allocate(expected.length);
+        ToStringRenderer.DUMP.writeTo(exact, elements);
+
+        assertArrayEquals(expected, exact.array());
+
+        ByteBuffer small = ByteBuffer.allocateDirect(expected.length - 1);
+        small.position(1);
+
+        assertThrows(BufferOverflowException.class, () -> ToStringRenderer.DUMP.writeTo(small, elements));
+        assertEquals(1, small.position());
+    }
+
+    /**
+     * Tests the {@link ToString#diff(Object, Object)} method with two states of a person.
+     * Only the changed values must be written with their paths, ignored fields must be left out,
+     * fields not to be resolved must only be written if their written form differs, and shared objects must not be visited at all.
+     * Sets must be compared by their elements, and missing elements and keys must be written even if they are {@code null}.
+     */
+    @Test
+    void testDiffWritesChangedPaths() {
+        Address moved = new Address("123 Main St", "Othertown", "12345");
+        List<Address> addressesNew = new ArrayList<>(addressesOld);
+        Person after = new Person("John Doe", 31, moved, addressesNew);
+        moved.setResident(after);
+
+        assertEquals("Person.address.city: \"Anytown\" -> \"Othertown\"", ToString.diff(person, after));
+
+        addressesNew.add(moved);
+
+        String expected = "Person.address.city: \"Anytown\" -> \"Othertown\"\n"
+            + "Person.addressesOld: ArrayList[1] -> ArrayList[2]";
+
+        assertEquals(expected, ToString.diff(person, after));
+        assertEquals("", ToString.diff(person, person));
+        assertEquals("", ToString.diff(List.of(address, 1), List.of(address, 1)));
+        assertEquals("ArrayList[1]: 1 -> 2\nArrayList[2]: ABSENT -> 3", ToString.diff(new ArrayList<>(List.of(0, 1)), new ArrayList<>(List.of(0, 2, 3))));
+        assertEquals("ArrayList[1]: NULL -> ABSENT", ToString.diff(new ArrayList<>(Arrays.asList(0, null)), new ArrayList<>(List.of(0))));
+        assertEquals("HashSet[\"zz\"]: ABSENT -> \"zz\"", ToString.diff(new HashSet<>(Set.of("a", "b", "c")), new HashSet<>(Set.of("a", "b", "c", "zz"))));
+        assertEquals("HashSet[\"a\"]: \"a\" -> ABSENT\nHashSet[\"c\"]: ABSENT -> \"c\"", ToString.diff(new HashSet<>(Set.of("a", "b")), new HashSet<>(Set.of("b", "c"))));
+        assertEquals("HashMap[\"key2\"]: \"value2\" -> ABSENT", ToString.diff(map, new HashMap<>(Map.of("key1", "value1"))));
+
+        Map<String, String> gone = new HashMap<>();
+        gone.put("gone", null);
+
+        assertEquals("HashMap[\"gone\"]: NULL -> ABSENT", ToString.diff(gone, new HashMap<>()));
+        assertEquals("HashMap[\"gone\"]: ABSENT -> NULL", ToString.diff(new HashMap<>(), gone));
+        assertEquals("Measurement: Measurement[sensor=7,channel=300,sequence=42,timestamp=1700000000000,value=21.5,tolerance=0.25,valid=true,unit=C] -> NULL",
+            ToString.diff(new Measurement(), null));
+    }
+
+    /**
+     * Tests that a renderer with a projection writes only the selected fields, with their values written as without projection.
+     */
+    @Test
+    void testProjectionWritesSelectedFields() {
+        ToStringRenderer renderer = ToStringRenderer.builder()
+            .projection(ToStringProjection.of("name", "address.city", "addressesOld[].zip"))
+            .build();
+
+        assertEquals("Person[name=\"John Doe\",address=Address[city=\"Anytown\"],addressesOld=ArrayList[,\t\tAddress[zip=\"12345\"],\t]]",
+            renderer.render(person));
+
+        ToStringRenderer wildcard = ToStringRenderer.builder()
+            .projection(ToStringProjection.of("address.*", "addressesOld.resident.name"))
+            .build();
+
+        assertEquals("Person[address=Address[street=\"123 Main St\",city=\"Anytown\",zip=\"12345\",resident=Person[PARENT]],"
+            + "addressesOld=ArrayList[,\t\tAddress[resident=NULL],\t]]", wildcard.render(person));
+        assertThrows(IllegalArgumentException.class, () -> ToStringProjection.of("address..city"));
+    }
+
+    /**
+     * Tests that enabled metrics count the conversions per class and that the flight recorder event is recorded.
+     */
+    @Test
+    void testMetricsAndFlightRecorderEvents(@TempDir Path directory) throws IOException {
+        ToStringRenderer renderer = ToStringRenderer.builder().resolve(true).budget(ToStringBudget.builder().maxElements(2).build()).build();
+
+        ToStringMetrics.reset();
+        ToStringMetrics.enable();
+
+        String expected;
+
+        try (Recording recording = new Recording()) {
+            recording.enable(RenderEvent.NAME).withoutThreshold();
+            recording.start();
+            expected = renderer.render(list);
+            renderer.render(person);
+            recording.stop();
+
+            Path file = directory.resolve("render.jfr");
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            assertEquals(2, events.size());
+            assertEquals(Arrays.asList(1, 2, 3).getClass().getName(), events.get(0).getClass("rootClass").getName());
+            assertEquals(expected.length(), events.get(0).getLong("outputLength"));
+            assertTrue(events.get(0).getBoolean("truncated"));
+            assertEquals(Person.class.getName(), events.get(1).getClass("rootClass").getName());
+            assertEquals(2, events.get(1).getInt("maxDepth"));
+        } finally {
+            ToStringMetrics.disable();
+        }
+
+        ToStringClassMetrics metrics = ToStringMetrics.getClassMetrics(Person.class);
+
+        assertEquals(1, metrics.getRenders());
+        assertEquals(0, metrics.getTruncations());
+        assertEquals(1, ToStringMetrics.getClassMetrics(list.getClass()).getTruncations());
+        assertEquals(expected.length(), ToStringMetrics.getClassMetrics(list.getClass()).getOutputLength());
+        assertEquals(1, Arrays.stream(metrics.getLatencyHistogram()).sum());
+        assertTrue(metrics.getLatencyPercentile(0.99) >= metrics.getAverageNanos());
+
+        renderer.render(person);
+
+        assertEquals(1, ToStringMetrics.getClassMetrics(Person.class).getRenders());
+
+        ToStringMetrics.reset();
+    }
+
+    /**
+     * Tests that a conversion in a fresh JVM without any recording does not start the flight recorder,
+     * i.e. loads no internal class of the flight recorder.
+     */
+    @Test
+    void testConversionWithoutRecordingLoadsNoFlightRecorder() throws Exception {
+        List<String> output = runFirstConversion("-Xlog:class+load=info");
+
+        assertTrue(output.contains(ToString.create(person)), "conversion did not run: " + output);
+        assertEquals(List.of(), output.stream().filter(line -> line.contains("jdk.jfr.internal.")).toList());
+    }
+
+    /**
+     * Tests that a sampler converts only as many objects as its token bucket allows and summarizes the others.
+     */
+    @Test
+    void testSamplerSummarizesRejectedConversions() {
+        ToStringSampler sampler = ToStringSampler.builder().renderer(ToStringRenderer.DUMP).maxPerSecond(0.001).burst(2).build();
+        String summary = "ArrayList@" + Integer.toHexString(System.identityHashCode(addressesOld)) + "[1]";
+
+        assertEquals(ToString.createDump(person), sampler.render(person));
+        assertEquals(ToString.createDump(address), sampler.lazy(address).toString());
+        assertEquals(summary, sampler.render(addressesOld));
+        assertEquals(2, sampler.getRendered());
+        assertEquals(1, sampler.getSummarized());
+
+        assertEquals("Person@" + Integer.toHexString(System.identityHashCode(person)) + "[...]", ToStringSampler.summarize(person));
+        assertTrue(ToStringSampler.summarize(new int[5]).startsWith("int[]@"));
+        assertTrue(ToStringSampler.summarize(new int[5]).endsWith("[5]"));
+        assertEquals(ToString.TS_EXPR_NULL, ToStringSampler.summarize(null));
+
+        ToStringSampler perClass = ToStringSampler.builder().maxPerSecond(0.001).perClass(true).build();
+
+        assertEquals(ToString.create(person), perClass.render(person));
+        assertEquals(ToString.create(address), perClass.render(address));
+        assertTrue(perClass.render(person).startsWith("Person@"));
+
+        ToStringSampler rarely = ToStringSampler.builder().sampleRate(Integer.MAX_VALUE).build();
+
+        for (int i = 0; i < 1000; i++) {
+            rarely.render(list);
+        }
+
+        assertTrue(rarely.getSummarized() >= 999);
+    }
+
+    /**
+     * Tests that the JSON formats write the same fields as the string representation, escaped and with circular references marked.
+     * Single precision numbers must be written in their shortest form, not widened to {@code double}.
+     */
+    @Test
+    void testJsonOutput() throws IOException {
+        String json = "{\"@class\":\"Person\",\"name\":\"John Doe\",\"address\":{\"@class\":\"Address\",\"street\":\"123 Main St\","
+            + "\"city\":\"Anytown\",\"zip\":\"12345\",\"resident\":{\"@class\":\"Person\",\"@ref\":\"PARENT\"}},"
+            + "\"addressesOld\":{\"@class\":\"ArrayList\",\"@size\":1}}";
+
+        assertEquals(json, ToString.createJson(person));
+        assertEquals("{\"key1\":\"value1\",\"key2\":\"value2\"}", ToString.createJson(map));
+        assertEquals("[\"a\\\"b\\\\c\\n\",1.5,\"NaN\",null,[1,2],\"x\"]",
+            ToString.createJson(List.of("a\"b\\c\n", 1.5, Double.NaN, Optional.empty(), new int[] {1, 2}, 'x')));
+
+        record Reading(float value) {
+        }
+
+        assertEquals("[0.1,1.3,\"NaN\",[0.1,1.3,\"Infinity\"],{\"@class\":\"Reading\",\"value\":0.1}]",
+            ToString.createJson(List.of(0.1f, 1.3f, Float.NaN, new float[] {0.1f, 1.3f, Float.POSITIVE_INFINITY}, new Reading(0.1f))));
+
+        ToStringRenderer indented = ToStringRenderer.builder().format(ToStringFormat.JSON).delimiter(ToString.TS_DELIMITER_ML).resolve(true).build();
+
+        assertEquals("{\n\t\"@class\": \"Address\",\n\t\"street\": \"123 Main St\",\n\t\"city\": \"Anytown\",\n\t\"zip\": \"12345\",\n"
+            + "\t\"resident\": {\n\t\t\"@class\": \"Person\",\n\t\t\"name\": \"John Doe\",\n\t\t\"address\": {\n\t\t\t\"@class\": \"Address\",\n"
+            + "\t\t\t\"@ref\": \"PARENT\"\n\t\t},\n\t\t\"addressesOld\": {\n\t\t\t\"@class\": \"ArrayList\",\n\t\t\t\"@size\": 1\n\t\t}\n\t}\n}",
+            indented.render(address));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ToStringRenderer lines = ToStringRenderer.builder().format(ToStringFormat.JSON_LINES).resolve(true).build();
+
+        lines.writeTo(stream, person);
+        lines.writeTo(stream, map);
+
+        assertEquals(json + "\n{\"key1\":\"value1\",\"key2\":\"value2\"}\n", stream.toString(StandardCharsets.UTF_8));
+
+        ToStringBudget budget = ToStringBudget.builder().maxElements(2).build();
+
+        assertEquals("[1,2,{\"@omitted\":1}]", ToStringRenderer.builder().format(ToStringFormat.JSON).resolve(true).budget(budget).build().render(list));
+    }
+
+    /**
+     * Tests warming up classes and replaying a class index.
+     * Warming up a class must prepare it and the classes of its fields, but not classes written by formatters,
+     * and replaying an index must warm up exactly the loadable classes listed in it.
+     */
+    @Test
+    void testWarmupAndClassIndex(@TempDir Path directory) throws Exception {
+        assertEquals(2, ToStringWarmup.warmUp(Person.class));
+        assertTrue(ClassMetadata.getResolvedNames().containsAll(List.of(Person.class.getName(), Address.class.getName())));
+        assertEquals(7, ToStringWarmup.warmUpPackages("de.tilokowalski.util.objects"));
+        assertEquals(0, ToStringWarmup.replay(directory.resolve("missing.idx")));
+
+        Path written = directory.resolve("written.idx");
+        ToStringWarmup.writeIndex(written);
+
+        List<String> lines = Files.readAllLines(written);
+
+        assertEquals("# tostring-util class index", lines.get(0));
+        assertTrue(lines.containsAll(List.of(Person.class.getName(), Address.class.getName(), Chain.class.getName())));
+        assertEquals(lines.subList(1, lines.size()).stream().sorted().toList(), lines.subList(1, lines.size()));
+
+        Path index = directory.resolve("tostring.idx");
+        Files.writeString(index, "# comment\n" + Person.class.getName() + "\n\n de.tilokowalski.util.objects.Removed \n");
+
+        assertEquals(2, ToStringWarmup.replay(index));
+        assertEquals(2, ToStringWarmup.replayInBackground(index).get(10, TimeUnit.SECONDS));
+        assertEquals(3, ToStringWarmup.warmUpInBackground(Employee.class).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that a conversion right after warming up its class in a fresh JVM initializes no further class,
+     * i.e. that the warm-up also covers the renderers, formatters and metrics used by every conversion.
+     */
+    @Test
+    void testConversionAfterWarmupInitializesNoClass() throws Exception {
+        List<String> output = runFirstConversion("-Xlog:class+init=info", FirstConversion.WARM_UP);
+        String expected = ToString.create(person);
+
+        assertTrue(output.contains(expected), "conversion did not run: " + output);
+
+        List<String> conversion = output.subList(output.indexOf(FirstConversion.CONVERTING), output.indexOf(expected));
+
+        assertEquals(List.of(), conversion.stream().filter(line -> line.contains("Initializing")).toList());
+    }
+
+    /**
+     * Tests the specialized paths of records, maps and {@link Optional}.
+     * Records must be written by their components in declaration order, maps by their entries as key and value,
+     * also when keys are nested objects, and {@link Optional} values inline as their content.
+     */
+    @Test
+    void testRecordsMapsAndOptionals() {
+        Map<Object, Object> entries = new LinkedHashMap<>();
+        entries.put("key", Optional.of(1));
+        entries.put(address, Optional.empty());
+        entries.put(null, new TreeMap<>(Map.of("b", 2, "a", 1)));
+
+        String expected = "LinkedHashMap[\n\t\"key\"=1\n\tAddress[\n\t\tstreet=\"123 Main St\"\n\t\tcity=\"Anytown\"\n\t\tzip=\"12345\"\n"
+            + "\t\tresident=Person[\n\t\t\tname=\"John Doe\"\n\t\t\taddress=Address[PARENT]\n\t\t\taddressesOld=ArrayList[1]\n\t\t]\n\t]=NULL\n"
+            + "\tNULL=TreeMap[\n\t\t\"a\"=1\n\t\t\"b\"=2\n\t]\n]";
+
+        assertEquals("Label[text=\"home\",address=Address[]]", ToString.create(new Label("home", address)));
+        assertEquals(expected, ToString.createDump(entries));
+        assertEquals("HashMap[2]", ToString.create(map));
+    }
+
+    /**
+     * Run {@link FirstConversion} in a fresh JVM with the class path of the tests.
+     *
+     * @param option The option of the JVM, like logging of class loading.
+     * @param args The arguments of {@link FirstConversion}.
+     * @return The lines written to the standard output, including the log of the JVM.
+     * @throws Exception When the JVM can not be started or does not exit successfully.
+     */
+    private static List<String> runFirstConversion(String option, String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of(option, "-cp", System.getProperty("java.class.path"), FirstConversion.class.getName()));
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> output = new String(process.getInputStream().readAllBytes()).lines().toList();
+
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "conversion did not finish");
+        assertEquals(0, process.exitValue(), String.join("\n", output));
+
+        return output;
+    }
+
+    /**
+     * The first conversion of a fresh JVM, writing the representation of a person to the standard output.
+     */
+    static final class FirstConversion {
+
+        /**
+         * Argument to warm up the class of the person before converting it.
+         */
+        static final String WARM_UP = "warm-up";
+
+        /**
+         * Line written right before the conversion.
+         */
+        static final String CONVERTING = "converting";
+
+        /**
+         * Convert a person with an address, optionally after warming up its class.
+         *
+         * @param args {@link #WARM_UP} to warm up first.
+         */
+        public static void main(String[] args) {
+            System.out.println("started");
+
+            if (Arrays.asList(args).contains(WARM_UP)) {
+                ToStringWarmup.warmUp(Person.class);
+            }
+
+            Address address = new Address("123 Main St", "Anytown", "12345");
+            List<Address> addressesOld = new ArrayList<>();
+            addressesOld.add(new Address("123 Main St", "Anytown", "12345"));
+
+            Person person = new Person("John Doe", 30, address, addressesOld);
+            address.setResident(person);
+
+            System.out.println(CONVERTING);
+            System.out.println(ToString.create(person));
+        }
+
+    }
+
 }
@@ -0,0 +1,11 @@
+package de.tilokowalski.util.objects;
+
+/**
+ * A simple immutable linked chain for testing, cached by renderers with a cache at each of its links.
+ *
+ * @param next The next link, {@code null} for the last one.
+ * @param value The value of the link.
+ */
+public record Chain(Chain next, int value) {
+
+}
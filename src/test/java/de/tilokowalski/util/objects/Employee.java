@@ -0,0 +1,29 @@
+package de.tilokowalski.util.objects;
+
+import java.util.List;
+
+/**
+ * A simple employee class for testing. Extends the {@link Person} class to test the exploration of the class hierarchy.
+ */
+public class Employee extends Person {
+
+    /**
+     * The company the employee works for.
+     */
+    private String company;
+
+    /**
+     * Creates a new employee object.
+     *
+     * @param name The name of the employee.
+     * @param age The age of the employee.
+     * @param address The address of the employee.
+     * @param addressesOld A list with old addresses of the employee.
+     * @param company The company the employee works for.
+     */
+    public Employee(String name, int age, Address address, List<Address> addressesOld, String company) {
+        super(name, age, address, addressesOld);
+        this.company = company;
+    }
+
+}
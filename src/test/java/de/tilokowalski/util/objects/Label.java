@@ -0,0 +1,11 @@
+package de.tilokowalski.util.objects;
+
+/**
+ * A simple immutable label for testing, attached to an address. Records are cached by renderers with a cache.
+ *
+ * @param text The text of the label.
+ * @param address The labeled address.
+ */
+public record Label(String text, Address address) {
+
+}
@@ -0,0 +1,48 @@
+package de.tilokowalski.util.objects;
+
+/**
+ * A simple measurement class for testing. Contains a field of every primitive type.
+ */
+public class Measurement {
+
+    /**
+     * The identifier of the sensor.
+     */
+    private byte sensor = 7;
+
+    /**
+     * The channel of the sensor.
+     */
+    private short channel = 300;
+
+    /**
+     * The sequence number of the measurement.
+     */
+    private int sequence = 42;
+
+    /**
+     * The timestamp of the measurement in milliseconds.
+     */
+    private long timestamp = 1700000000000L;
+
+    /**
+     * The measured value.
+     */
+    private double value = 21.5;
+
+    /**
+     * The tolerance of the measured value.
+     */
+    private float tolerance = 0.25f;
+
+    /**
+     * Whether the measurement is valid.
+     */
+    private boolean valid = true;
+
+    /**
+     * The unit of the measured value.
+     */
+    private char unit = 'C';
+
+}
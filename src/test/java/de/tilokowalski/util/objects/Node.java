@@ -0,0 +1,32 @@
+package de.tilokowalski.util.objects;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A simple linked node class for testing. The reference to the next node comes first, to test cycles and deep chains.
+ */
+public class Node {
+
+    /**
+     * The next node.
+     */
+    @Getter
+    @Setter
+    private Node next;
+
+    /**
+     * The label of the node.
+     */
+    private String label;
+
+    /**
+     * Creates a new node object.
+     *
+     * @param label The label of the node.
+     */
+    public Node(String label) {
+        this.label = label;
+    }
+
+}